@@ -0,0 +1,782 @@
+package fa.nfa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * A frozen, compact copy of an NFA's transition function.
+ * States are numbered in insertion order and transitions are stored in
+ * compressed sparse row (CSR) form: the edges of state q are
+ * labels[offsets[q] .. offsets[q + 1]) and the matching entries of targets,
+ * sorted by label so that the edges on one symbol form a single run.
+ * Epsilon transitions live in their own segment, indexed by state alone.
+ *
+ * @author Nick Bortz & Flynn Hoare
+ * @since 2025-03-14
+ */
+public class CompactNFA implements Matcher {
+    // The label NFA.addTransition uses for epsilon transitions
+    static final char EPSILON = 'e';
+
+    // Approximate object sizes on a 64-bit JVM with compressed references
+    private static final long OBJECT_HEADER = 12;
+    private static final long ARRAY_HEADER = 16;
+    private static final long REFERENCE = 4;
+    private static final long HASH_MAP = 48;
+    private static final long HASH_SET = 16;
+    private static final long HASH_NODE = 32;
+    private static final long LINKED_HASH_NODE = 40;
+    private static final long BOXED_CHARACTER = 16;
+
+    // Shortest chunk worth giving its own core in acceptsParallel
+    public static final int MIN_PARALLEL_CHUNK = 1 << 16;
+    // Number of characters between attempts to merge speculative simulations
+    private static final int MERGE_INTERVAL = 16;
+
+    // Rows at most this long are searched by scanning rather than by binary search
+    private static final int SCAN_LENGTH = 8;
+
+    private final int numStates;
+    // The symbols of sigma in insertion order, not counting 'e'
+    private final char[] symbols;
+
+    private final int[] offsets;
+    private final char[] labels;
+    private final int[] targets;
+    private final int[] epsOffsets;
+    private final int[] epsTargets;
+
+    private final long[] finals;
+    private final int start;
+
+    /**
+     * Freezes the current states and transitions of an NFA.
+     * Later changes to the NFA are not reflected in this copy.
+     * @param nfa The NFA to compact.
+     * @throws IllegalArgumentException if the NFA has too many transitions to index with int offsets.
+     */
+    public CompactNFA(NFA nfa) {
+        List<NFAState> order = new ArrayList<>(nfa.getStates());
+        numStates = order.size();
+
+        Map<NFAState, Integer> ids = new HashMap<>(numStates * 2);
+        for (int i = 0; i < numStates; i++)
+            ids.put(order.get(i), i);
+
+        // Epsilon is kept out of the symbol table since it has its own segment
+        StringBuilder sigma = new StringBuilder();
+        for (char symbol : nfa.getSigma()) {
+            if (symbol != EPSILON)
+                sigma.append(symbol);
+        }
+        symbols = sigma.toString().toCharArray();
+
+        // Visiting the symbols in order leaves every row sorted by label
+        char[] sorted = symbols.clone();
+        Arrays.sort(sorted);
+
+        // First pass counts the edges of every state, second pass fills them in
+        offsets = new int[numStates + 1];
+        epsOffsets = new int[numStates + 1];
+        long edges = 0;
+        long epsEdges = 0;
+        for (int q = 0; q < numStates; q++) {
+            NFAState state = order.get(q);
+            for (char symbol : sorted)
+                edges += state.toStates(symbol).size();
+            epsEdges += state.toStates(EPSILON).size();
+            if (edges >= Integer.MAX_VALUE || epsEdges >= Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Too many transitions: " + (edges + epsEdges));
+
+            offsets[q + 1] = (int) edges;
+            epsOffsets[q + 1] = (int) epsEdges;
+        }
+
+        labels = new char[(int) edges];
+        targets = new int[(int) edges];
+        epsTargets = new int[(int) epsEdges];
+        finals = new long[(numStates + 63) >>> 6];
+        for (int q = 0; q < numStates; q++) {
+            NFAState state = order.get(q);
+            int e = offsets[q];
+            for (char symbol : sorted) {
+                Set<NFAState> to = state.toStates(symbol);
+                Arrays.fill(labels, e, e + to.size(), symbol);
+                fill(to, ids, targets, e);
+                e += to.size();
+            }
+            fill(state.toStates(EPSILON), ids, epsTargets, epsOffsets[q]);
+
+            if (state.isFinal())
+                finals[q >>> 6] |= 1L << q;
+        }
+
+        NFAState startState = nfa.getStart();
+        start = startState == null ? -1 : ids.get(startState);
+    }
+
+    /**
+     * Copies the ids of a set of states into a segment of a target array.
+     * @param states The states to copy.
+     * @param ids The id of every state.
+     * @param into The target array.
+     * @param from The first index of the segment.
+     */
+    private static void fill(Set<NFAState> states, Map<NFAState, Integer> ids, int[] into, int from) {
+        for (NFAState state : states)
+            into[from++] = ids.get(state);
+    }
+
+    /**
+     * Simulates the NFA on input s, exactly like NFA.accepts.
+     * @param s The input string.
+     * @return true if s is in the language of the NFA.
+     */
+    @Override
+    public boolean accepts(CharSequence s) {
+        if (start < 0)
+            return false;
+
+        // Each active list doubles as the worklist for its own epsilon closure
+        int[] current = new int[numStates];
+        int[] next = new int[numStates];
+        long[] seen = new long[finals.length];
+
+        current[0] = start;
+        seen[start >>> 6] |= 1L << start;
+        int currentSize = close(current, 1, seen);
+
+        for (int i = 0; i < s.length(); i++) {
+            int nextSize = step(current, currentSize, s.charAt(i), next, seen);
+
+            // There is nowhere to go, so the string is not accepted
+            if (nextSize == 0)
+                return false;
+
+            int[] swap = current;
+            current = next;
+            next = swap;
+            currentSize = nextSize;
+        }
+
+        for (int i = 0; i < currentSize; i++) {
+            if (isFinal(current[i]))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves a set of active states over one input character and closes the result under epsilon.
+     * @param current The active states.
+     * @param currentSize The number of active states.
+     * @param c The input character.
+     * @param next Receives the new active states.
+     * @param seen An all-zero bitset with a bit per state; it is all zero again on return.
+     * @return The number of new active states.
+     */
+    int step(int[] current, int currentSize, char c, int[] next, long[] seen) {
+        int nextSize = 0;
+        if (c == EPSILON) {
+            // NFA.accepts follows epsilon transitions when 'e' itself is read
+            for (int i = 0; i < currentSize; i++) {
+                int q = current[i];
+                for (int e = epsOffsets[q]; e < epsOffsets[q + 1]; e++) {
+                    int to = epsTargets[e];
+                    if ((seen[to >>> 6] & (1L << to)) == 0) {
+                        seen[to >>> 6] |= 1L << to;
+                        next[nextSize++] = to;
+                    }
+                }
+            }
+        } else {
+            for (int i = 0; i < currentSize; i++) {
+                int end = offsets[current[i] + 1];
+                for (int e = firstEdge(offsets[current[i]], end, c); e < end && labels[e] == c; e++) {
+                    int to = targets[e];
+                    if ((seen[to >>> 6] & (1L << to)) == 0) {
+                        seen[to >>> 6] |= 1L << to;
+                        next[nextSize++] = to;
+                    }
+                }
+            }
+        }
+        return close(next, nextSize, seen);
+    }
+
+    /**
+     * Finds the first edge of a row whose label is not less than c.
+     * @param from The first edge of the row.
+     * @param to The end of the row.
+     * @param c The input character.
+     * @return The index of the edge, or to if every label is less than c.
+     */
+    private int firstEdge(int from, int to, char c) {
+        while (to - from > SCAN_LENGTH) {
+            int mid = (from + to) >>> 1;
+            if (labels[mid] < c)
+                from = mid + 1;
+            else
+                to = mid;
+        }
+        while (from < to && labels[from] < c)
+            from++;
+        return from;
+    }
+
+    /**
+     * Extends a list of states with everything reachable from it on epsilon transitions,
+     * then clears the bits of the listed states in seen.
+     * @param list The states, with room for every state of the NFA.
+     * @param size The number of states in the list.
+     * @param seen A bitset with exactly the listed states set.
+     * @return The number of states in the closed list.
+     */
+    private int close(int[] list, int size, long[] seen) {
+        for (int i = 0; i < size; i++) {
+            int from = list[i];
+            for (int e = epsOffsets[from]; e < epsOffsets[from + 1]; e++) {
+                int to = epsTargets[e];
+                if ((seen[to >>> 6] & (1L << to)) == 0) {
+                    seen[to >>> 6] |= 1L << to;
+                    list[size++] = to;
+                }
+            }
+        }
+
+        for (int i = 0; i < size; i++)
+            seen[list[i] >>> 6] &= ~(1L << list[i]);
+        return size;
+    }
+
+    /**
+     * Retrieves the input characters that have transitions in a determinized form of this NFA.
+     * Reading 'e' follows epsilon transitions, so it is included along with sigma.
+     * @return A new array of the symbols of sigma followed by 'e'.
+     */
+    char[] columns() {
+        char[] columns = Arrays.copyOf(symbols, symbols.length + 1);
+        columns[symbols.length] = EPSILON;
+        return columns;
+    }
+
+    /**
+     * Fills a list with the start state and everything reachable from it on epsilon transitions.
+     * @param list Receives the states, with room for every state of the NFA.
+     * @param seen An all-zero bitset with a bit per state; it is all zero again on return.
+     * @return The number of states in the list, or 0 if there is no start state.
+     */
+    int startClosure(int[] list, long[] seen) {
+        if (start < 0)
+            return 0;
+        list[0] = start;
+        seen[start >>> 6] |= 1L << start;
+        return close(list, 1, seen);
+    }
+
+    /**
+     * Builds an equivalent DFA with the subset construction.
+     * @param maxStates The most DFA states to build before giving up.
+     * @return The DFA, or null if it would have more than maxStates states.
+     */
+    public TableDFA determinize(int maxStates) {
+        char[] columns = columns();
+        if (start < 0)
+            return new TableDFA(0, columns, new int[0], new boolean[0]);
+
+        int[] next = new int[numStates];
+        long[] seen = new long[finals.length];
+        int size = startClosure(next, seen);
+
+        Map<StateSet, Integer> ids = new HashMap<>();
+        List<int[]> subsets = new ArrayList<>();
+        int[] startSet = Arrays.copyOf(next, size);
+        Arrays.sort(startSet);
+        ids.put(new StateSet(startSet, size), 0);
+        subsets.add(startSet);
+
+        int[] delta = new int[columns.length * 16];
+        for (int q = 0; q < subsets.size(); q++) {
+            int[] subset = subsets.get(q);
+            for (int a = 0; a < columns.length; a++) {
+                size = step(subset, subset.length, columns[a], next, seen);
+
+                int to = -1;
+                if (size > 0) {
+                    int[] target = Arrays.copyOf(next, size);
+                    Arrays.sort(target);
+                    to = ids.computeIfAbsent(new StateSet(target, size), key -> {
+                        subsets.add(key.states);
+                        return subsets.size() - 1;
+                    });
+                    if (subsets.size() > maxStates)
+                        return null;
+                }
+
+                int index = q * columns.length + a;
+                if (index >= delta.length)
+                    delta = Arrays.copyOf(delta, delta.length * 2);
+                delta[index] = to;
+            }
+        }
+
+        boolean[] accepting = new boolean[subsets.size()];
+        for (int q = 0; q < subsets.size(); q++) {
+            for (int state : subsets.get(q))
+                accepting[q] |= isFinal(state);
+        }
+        return new TableDFA(subsets.size(), columns,
+                Arrays.copyOf(delta, subsets.size() * columns.length), accepting);
+    }
+
+    /**
+     * Scans s backwards from a known match end, treating this NFA as the reverse
+     * of a forward NFA (see NFA.reverse), to find where the leftmost match ending there starts.
+     * The scan stops as soon as no state is active, so it is linear in the length of the match.
+     * @param s The input string.
+     * @param end The index just past the last character of the match.
+     * @return The smallest i such that the forward NFA accepts s[i, end), or -1 if there is none.
+     */
+    public int leftmostStart(CharSequence s, int end) {
+        int[] current = new int[numStates];
+        int[] next = new int[numStates];
+        long[] seen = new long[finals.length];
+        int currentSize = startClosure(current, seen);
+
+        int leftmost = -1;
+        for (int i = end; currentSize > 0; i--) {
+            for (int k = 0; k < currentSize; k++) {
+                if (isFinal(current[k])) {
+                    leftmost = i;
+                    break;
+                }
+            }
+            if (i == 0)
+                break;
+
+            currentSize = step(current, currentSize, s.charAt(i - 1), next, seen);
+            int[] swap = current;
+            current = next;
+            next = swap;
+        }
+        return leftmost;
+    }
+
+    /**
+     * Simulates the NFA on input s like accepts, splitting s into one chunk per available core.
+     * Inputs shorter than MIN_PARALLEL_CHUNK characters per chunk are simulated sequentially.
+     * @param s The input string.
+     * @return true if s is in the language of the NFA.
+     */
+    public boolean acceptsParallel(CharSequence s) {
+        int chunks = Math.min(Runtime.getRuntime().availableProcessors(), s.length() / MIN_PARALLEL_CHUNK);
+        return acceptsParallel(s, chunks);
+    }
+
+    /**
+     * Simulates the NFA on input s like accepts, using a given number of chunks.
+     * Every chunk but the first is simulated speculatively on its own core from each
+     * single state, since the states active at its beginning are not known yet.
+     * Simulations that reach the same set of states are merged, so the work per
+     * chunk quickly falls to a handful of simulations on most automata.
+     * The resulting maps from state to state set are then composed left to right.
+     * @param s The input string.
+     * @param chunks The number of chunks to split s into.
+     * @return true if s is in the language of the NFA.
+     */
+    public boolean acceptsParallel(CharSequence s, int chunks) {
+        chunks = Math.min(chunks, s.length());
+        if (chunks <= 1 || start < 0)
+            return accepts(s);
+
+        int length = s.length();
+        int parts = chunks;
+        ChunkSummary[] summaries = IntStream.range(0, parts).parallel()
+                .mapToObj(k -> {
+                    int from = (int) ((long) length * k / parts);
+                    int to = (int) ((long) length * (k + 1) / parts);
+                    return k == 0 ? simulateChunk(s, to) : summarizeChunk(s, from, to);
+                })
+                .toArray(ChunkSummary[]::new);
+
+        // Compose the chunk summaries, starting from the states active at the start of the input
+        int[] current = new int[numStates];
+        int[] next = new int[numStates];
+        long[] seen = new long[finals.length];
+        long[] lanesSeen = new long[finals.length];
+        current[0] = start;
+        int currentSize = 1;
+
+        for (ChunkSummary summary : summaries) {
+            int nextSize = 0;
+            for (int i = 0; i < currentSize; i++) {
+                int lane = summary.laneOf[current[i]];
+                if (lane < 0 || (lanesSeen[lane >>> 6] & (1L << lane)) != 0)
+                    continue;
+                lanesSeen[lane >>> 6] |= 1L << lane;
+
+                for (int to : summary.laneStates[lane]) {
+                    if ((seen[to >>> 6] & (1L << to)) == 0) {
+                        seen[to >>> 6] |= 1L << to;
+                        next[nextSize++] = to;
+                    }
+                }
+            }
+            Arrays.fill(seen, 0);
+            Arrays.fill(lanesSeen, 0);
+
+            // There is nowhere to go, so the string is not accepted
+            if (nextSize == 0)
+                return false;
+
+            int[] swap = current;
+            current = next;
+            next = swap;
+            currentSize = nextSize;
+        }
+
+        for (int i = 0; i < currentSize; i++) {
+            if (isFinal(current[i]))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Simulates the first chunk of the input exactly, from the start state.
+     * @param s The input string.
+     * @param to The end of the chunk, exclusive.
+     * @return A summary that maps the start state to the states active at the end of the chunk.
+     */
+    private ChunkSummary simulateChunk(CharSequence s, int to) {
+        int[] current = new int[numStates];
+        int[] next = new int[numStates];
+        long[] seen = new long[finals.length];
+
+        current[0] = start;
+        seen[start >>> 6] |= 1L << start;
+        int currentSize = close(current, 1, seen);
+
+        for (int i = 0; i < to && currentSize > 0; i++) {
+            currentSize = step(current, currentSize, s.charAt(i), next, seen);
+            int[] swap = current;
+            current = next;
+            next = swap;
+        }
+
+        int[] laneOf = new int[numStates];
+        Arrays.fill(laneOf, -1);
+        if (currentSize > 0)
+            laneOf[start] = 0;
+        return new ChunkSummary(laneOf, new int[][] { Arrays.copyOf(current, currentSize) });
+    }
+
+    /**
+     * Simulates a chunk of the input from every single state at once.
+     * Each state starts its own simulation, called a lane; lanes that die are dropped
+     * and lanes whose active states become equal are merged every few characters.
+     * @param s The input string.
+     * @param from The start of the chunk, inclusive.
+     * @param to The end of the chunk, exclusive.
+     * @return A summary that maps every state to the states active at the end of the chunk.
+     */
+    private ChunkSummary summarizeChunk(CharSequence s, int from, int to) {
+        int[][] lanes = new int[numStates][];
+        int[] sizes = new int[numStates];
+        // alias[id] is id for a live lane, -1 for a dead one, or the lane it was merged into
+        int[] alias = new int[numStates];
+        int[] alive = new int[numStates];
+        int aliveCount = numStates;
+
+        for (int q = 0; q < numStates; q++) {
+            // Incoming state sets are already closed under epsilon, so q is not closed here
+            lanes[q] = new int[] { q };
+            sizes[q] = 1;
+            alias[q] = q;
+            alive[q] = q;
+        }
+
+        int[] next = new int[numStates];
+        long[] seen = new long[finals.length];
+        for (int i = from; i < to && aliveCount > 0; i++) {
+            char c = s.charAt(i);
+            int stillAlive = 0;
+            for (int k = 0; k < aliveCount; k++) {
+                int id = alive[k];
+                int size = step(lanes[id], sizes[id], c, next, seen);
+                if (size == 0) {
+                    alias[id] = -1;
+                    lanes[id] = null;
+                    continue;
+                }
+
+                if (lanes[id].length < size)
+                    lanes[id] = new int[Math.min(numStates, Math.max(size, lanes[id].length * 2))];
+                System.arraycopy(next, 0, lanes[id], 0, size);
+                sizes[id] = size;
+                alive[stillAlive++] = id;
+            }
+            aliveCount = stillAlive;
+
+            if ((i - from) % MERGE_INTERVAL == MERGE_INTERVAL - 1)
+                aliveCount = mergeLanes(lanes, sizes, alias, alive, aliveCount);
+        }
+
+        // Point every state at the lane its simulation ended up in
+        int[] laneOf = new int[numStates];
+        int[][] laneStates = new int[numStates][];
+        for (int q = 0; q < numStates; q++) {
+            int lane = q;
+            while (alias[lane] >= 0 && alias[lane] != lane)
+                lane = alias[lane];
+            if (alias[lane] < 0) {
+                laneOf[q] = -1;
+            } else {
+                laneOf[q] = lane;
+                if (laneStates[lane] == null)
+                    laneStates[lane] = Arrays.copyOf(lanes[lane], sizes[lane]);
+            }
+        }
+        return new ChunkSummary(laneOf, laneStates);
+    }
+
+    /**
+     * Merges live lanes that have the same active states.
+     * @return The number of lanes still alive.
+     */
+    private static int mergeLanes(int[][] lanes, int[] sizes, int[] alias, int[] alive, int aliveCount) {
+        Map<StateSet, Integer> survivors = new HashMap<>(aliveCount * 2);
+        int stillAlive = 0;
+        for (int k = 0; k < aliveCount; k++) {
+            int id = alive[k];
+            Arrays.sort(lanes[id], 0, sizes[id]);
+
+            Integer survivor = survivors.putIfAbsent(new StateSet(lanes[id], sizes[id]), id);
+            if (survivor == null) {
+                alive[stillAlive++] = id;
+            } else {
+                alias[id] = survivor;
+                lanes[id] = null;
+            }
+        }
+        return stillAlive;
+    }
+
+    /**
+     * The effect of one chunk of input: the states active at its end for every state active at its start.
+     */
+    private static final class ChunkSummary {
+        // laneOf[q] indexes laneStates, or is -1 if no state is active after starting from q
+        private final int[] laneOf;
+        private final int[][] laneStates;
+
+        private ChunkSummary(int[] laneOf, int[][] laneStates) {
+            this.laneOf = laneOf;
+            this.laneStates = laneStates;
+        }
+    }
+
+    /**
+     * A sorted prefix of a state array, used to find lanes and DFA states with equal active states.
+     */
+    static final class StateSet {
+        final int[] states;
+        private final int size;
+        private final int hash;
+
+        StateSet(int[] states, int size) {
+            this.states = states;
+            this.size = size;
+
+            int h = 1;
+            for (int i = 0; i < size; i++)
+                h = 31 * h + states[i];
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StateSet))
+                return false;
+            StateSet other = (StateSet) o;
+            return hash == other.hash && Arrays.equals(states, 0, size, other.states, 0, other.size);
+        }
+    }
+
+    /**
+     * Determines if the state with a given id is final
+     * @param q The state id.
+     * @return true if the state is final.
+     */
+    boolean isFinal(int q) {
+        return (finals[q >>> 6] & (1L << q)) != 0;
+    }
+
+    /**
+     * Retrieves the number of states.
+     * @return The number of states.
+     */
+    public int stateCount() {
+        return numStates;
+    }
+
+    /**
+     * Retrieves the number of symbols in sigma, not counting 'e'.
+     * @return The size of the alphabet.
+     */
+    public int symbolCount() {
+        return symbols.length;
+    }
+
+    /**
+     * Retrieves the number of epsilon transitions.
+     * @return The number of (from, to) epsilon edges.
+     */
+    public int epsilonEdgeCount() {
+        return epsTargets.length;
+    }
+
+    /**
+     * Retrieves the number of transitions, including epsilon transitions.
+     * @return The number of (from, symbol, to) edges.
+     */
+    public int edgeCount() {
+        return targets.length + epsTargets.length;
+    }
+
+    /**
+     * Copies the tables of this NFA into native memory outside the Java heap.
+     * The returned copy must be closed once it is no longer needed.
+     * @return An off-heap copy that accepts exactly the same strings.
+     */
+    public OffHeapNFA toOffHeap() {
+        return toOffHeap(OffHeapNFA.CHUNK_SHIFT);
+    }
+
+    /**
+     * Copies the tables of this NFA into native buffers of a given size, e.g. to
+     * exercise tables that span several buffers without allocating gigabytes.
+     * @param chunkShift The log2 of the size of each buffer in bytes, from 3 to 30.
+     * @return An off-heap copy that accepts exactly the same strings.
+     * @throws IllegalArgumentException if chunkShift is out of range.
+     */
+    public OffHeapNFA toOffHeap(int chunkShift) {
+        return new OffHeapNFA(numStates, start, offsets, labels, targets, epsOffsets, epsTargets, finals, chunkShift);
+    }
+
+    /**
+     * Determines the heap space used by this compact copy.
+     * @return The size of all backing arrays in bytes.
+     */
+    public long footprintBytes() {
+        return align(OBJECT_HEADER + 7 * REFERENCE + 2 * Integer.BYTES)
+                + array(symbols.length, Character.BYTES)
+                + array(offsets.length, Integer.BYTES)
+                + array(labels.length, Character.BYTES)
+                + array(targets.length, Integer.BYTES)
+                + array(epsOffsets.length, Integer.BYTES)
+                + array(epsTargets.length, Integer.BYTES)
+                + array(finals.length, Long.BYTES);
+    }
+
+    /**
+     * Estimates the heap space used by an NFA's object graph:
+     * its states, their names, and their transition maps and sets.
+     * @param nfa The NFA to measure.
+     * @return The estimated size in bytes.
+     */
+    public static long objectGraphBytes(NFA nfa) {
+        Set<NFAState> states = nfa.getStates();
+        long bytes = OBJECT_HEADER + 3 * REFERENCE
+                + linkedHashSet(states.size())
+                + linkedHashSet(nfa.getSigma().size());
+
+        List<Character> labels = new ArrayList<>(nfa.getSigma());
+        if (!labels.contains(EPSILON))
+            labels.add(EPSILON);
+
+        for (NFAState state : states) {
+            // The state itself, its name and an empty transition map
+            bytes += align(OBJECT_HEADER + 2 * REFERENCE + 2);
+            bytes += align(OBJECT_HEADER + REFERENCE + Integer.BYTES + 2)
+                    + array(state.getName().length(), Byte.BYTES);
+            bytes += HASH_MAP;
+
+            int used = 0;
+            for (char label : labels) {
+                int size = state.toStates(label).size();
+                if (size == 0)
+                    continue;
+
+                // The map entry, the boxed key and the target set
+                used++;
+                bytes += HASH_NODE + (label < 128 ? 0 : BOXED_CHARACTER);
+                bytes += HASH_SET + HASH_MAP + table(size) + size * HASH_NODE;
+            }
+            if (used > 0)
+                bytes += table(used);
+        }
+        return bytes;
+    }
+
+    /**
+     * Compares the footprint of this copy with the object graph it was built from.
+     * @param source The NFA this copy was built from.
+     * @return A short human-readable report.
+     */
+    public String footprintReport(NFA source) {
+        long graph = objectGraphBytes(source);
+        long compact = footprintBytes();
+        int edges = Math.max(1, edgeCount());
+
+        return String.format("states: %d, edges: %d%n"
+                + "object graph: %d bytes (%.1f bytes/edge)%n"
+                + "compact:      %d bytes (%.1f bytes/edge)%n"
+                + "ratio:        %.1fx",
+                numStates, edgeCount(),
+                graph, (double) graph / edges,
+                compact, (double) compact / edges,
+                (double) graph / Math.max(1, compact));
+    }
+
+    /**
+     * Estimates the size of a LinkedHashSet with a given number of elements.
+     */
+    private static long linkedHashSet(int size) {
+        return HASH_SET + HASH_MAP + 2 * REFERENCE + table(size) + size * LINKED_HASH_NODE;
+    }
+
+    /**
+     * Estimates the size of a HashMap bucket table holding a given number of entries.
+     */
+    private static long table(int entries) {
+        int capacity = 16;
+        while (capacity * 3L / 4 < entries)
+            capacity <<= 1;
+        return array(capacity, (int) REFERENCE);
+    }
+
+    /**
+     * Estimates the size of a primitive or reference array.
+     */
+    private static long array(int length, int elementBytes) {
+        return align(ARRAY_HEADER + (long) length * elementBytes);
+    }
+
+    /**
+     * Rounds a size up to the JVM's 8 byte object alignment.
+     */
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,240 @@
+package fa.nfa;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Chooses an execution engine for each NFA from its structure and from
+ * the number of NFA copies it needs on sample inputs, and caches the choice.
+ * Plans are cached by NFA identity, so a plan must be invalidated
+ * when its NFA is edited; VersionedNFA snapshots never need this.
+ * Planning runs outside the cache lock, so slow plans do not hold up other NFAs.
+ *
+ * @author Nick Bortz & Flynn Hoare
+ * @since 2025-03-14
+ */
+public class EnginePlanner {
+    // Largest DFA the planner builds eagerly while planning
+    public static final int MAX_EAGER_STATES = 1024;
+    // Largest lazy DFA cache before falling back to bitset simulation
+    public static final int MAX_LAZY_STATES = 4096;
+    // Most NFA copies on the samples for which a lazy DFA is expected to stay small
+    public static final int MAX_LAZY_COPIES = 16;
+    // Share of epsilon transitions above which cached closures pay off regardless of copies
+    public static final double LAZY_EPSILON_DENSITY = 0.25;
+
+    /**
+     * The execution engines a plan can choose from.
+     */
+    public enum Engine {
+        // A generated class, see MatcherCompiler
+        GENERATED,
+        // A fully built TableDFA
+        DFA_TABLE,
+        // A LazyDFA that determinizes while matching
+        LAZY_DFA,
+        // Bitset simulation of the CompactNFA
+        BITSET
+    }
+
+    private final int maxEagerStates;
+    private final int maxLazyStates;
+    // Guarded by itself; a plan in progress is a future that other callers wait on
+    private final Map<NFA, CompletableFuture<Plan>> plans;
+
+    /**
+     * Creates a planner with an empty cache and the default limits.
+     */
+    public EnginePlanner() {
+        this(MAX_EAGER_STATES, MAX_LAZY_STATES);
+    }
+
+    /**
+     * Creates a planner with an empty cache.
+     * @param maxEagerStates The largest DFA to build while planning.
+     * @param maxLazyStates The largest lazy DFA cache before falling back to bitset simulation.
+     */
+    public EnginePlanner(int maxEagerStates, int maxLazyStates) {
+        this.maxEagerStates = maxEagerStates;
+        this.maxLazyStates = maxLazyStates;
+        plans = new WeakHashMap<>();
+    }
+
+    /**
+     * Retrieves the cached plan for an NFA, planning it first if necessary.
+     * Concurrent calls for the same NFA plan it once and share the result.
+     * @param nfa The NFA to plan.
+     * @param samples Representative inputs, used to measure maxCopies.
+     * @return The plan for the NFA.
+     */
+    public Plan plan(NFA nfa, Collection<String> samples) {
+        CompletableFuture<Plan> planned;
+        CompletableFuture<Plan> mine = null;
+        synchronized (plans) {
+            planned = plans.get(nfa);
+            if (planned == null) {
+                mine = new CompletableFuture<>();
+                planned = mine;
+                plans.put(nfa, mine);
+            }
+        }
+
+        if (mine != null) {
+            try {
+                mine.complete(createPlan(nfa, samples, maxEagerStates, maxLazyStates));
+            } catch (RuntimeException | Error e) {
+                synchronized (plans) {
+                    plans.remove(nfa, mine);
+                }
+                mine.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            return planned.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Forgets the cached plan of an NFA, e.g. after it has been edited.
+     * @param nfa The NFA whose plan to drop.
+     */
+    public void invalidate(NFA nfa) {
+        synchronized (plans) {
+            plans.remove(nfa);
+        }
+    }
+
+    /**
+     * Chooses an engine for an NFA with the default limits, without consulting the cache.
+     * @param nfa The NFA to plan.
+     * @param samples Representative inputs, used to measure maxCopies.
+     * @return A new plan.
+     */
+    public static Plan createPlan(NFA nfa, Collection<String> samples) {
+        return createPlan(nfa, samples, MAX_EAGER_STATES, MAX_LAZY_STATES);
+    }
+
+    /**
+     * Chooses an engine for an NFA without consulting the cache.
+     * @see #EnginePlanner(int, int)
+     */
+    private static Plan createPlan(NFA nfa, Collection<String> samples, int maxEagerStates, int maxLazyStates) {
+        CompactNFA compact = new CompactNFA(nfa);
+        int states = compact.stateCount();
+        int sigma = compact.symbolCount();
+        double epsilonDensity = (double) compact.epsilonEdgeCount() / Math.max(1, compact.edgeCount());
+
+        // A DFA determinizes into at most one state per NFA state;
+        // larger ones are left to the lazy DFA like any other NFA
+        if (nfa.isDFA() && states <= maxEagerStates) {
+            TableDFA dfa = compact.determinize(Math.max(1, states));
+            return tablePlan(compact, dfa, "isDFA holds with " + states + " states");
+        }
+
+        if ((long) states * sigma <= maxEagerStates * 16L) {
+            TableDFA dfa = compact.determinize(maxEagerStates);
+            if (dfa != null)
+                return tablePlan(compact, dfa, "subset construction of " + states
+                        + " NFA states over " + sigma + " symbols gave " + dfa.stateCount() + " DFA states");
+        }
+
+        // maxCopies needs a start state
+        int copies = 0;
+        if (nfa.getStart() != null) {
+            for (String sample : samples)
+                copies = Math.max(copies, nfa.maxCopies(sample));
+        }
+
+        String stats = String.format("%d states, %d symbols, epsilon density %.2f, maxCopies %d on %d samples",
+                states, sigma, epsilonDensity, copies, samples.size());
+        if (copies <= MAX_LAZY_COPIES || epsilonDensity >= LAZY_EPSILON_DENSITY)
+            return new Plan(compact, Engine.LAZY_DFA, new LazyDFA(compact, maxLazyStates), stats);
+        return new Plan(compact, Engine.BITSET, compact, stats);
+    }
+
+    /**
+     * Plans a fully built DFA, generating code for it if it is small enough.
+     */
+    private static Plan tablePlan(CompactNFA compact, TableDFA dfa, String reason) {
+        if (dfa.stateCount() <= MatcherCompiler.MAX_STATES) {
+            Matcher generated = MatcherCompiler.compile(dfa);
+            if (generated != dfa)
+                return new Plan(compact, Engine.GENERATED, generated, reason);
+        }
+        return new Plan(compact, Engine.DFA_TABLE, dfa, reason);
+    }
+
+    /**
+     * The engine chosen for one NFA, and why. A plan that uses a lazy DFA
+     * switches to bitset simulation once the DFA outgrows its cache.
+     */
+    public static final class Plan implements Matcher {
+        private final CompactNFA compact;
+        private volatile Engine engine;
+        private volatile Matcher matcher;
+        private volatile String reason;
+
+        private Plan(CompactNFA compact, Engine engine, Matcher matcher, String reason) {
+            this.compact = compact;
+            this.engine = engine;
+            this.matcher = matcher;
+            this.reason = reason;
+        }
+
+        /**
+         * Simulates the NFA on input s with the chosen engine.
+         * @param s The input string.
+         * @return true if s is in the language of the NFA.
+         */
+        @Override
+        public boolean accepts(CharSequence s) {
+            Matcher current = matcher;
+            boolean accepted = current.accepts(s);
+
+            if (current instanceof LazyDFA && ((LazyDFA) current).isFull())
+                switchToBitset((LazyDFA) current);
+            return accepted;
+        }
+
+        /**
+         * Replaces a lazy DFA that has blown up with bitset simulation.
+         */
+        private synchronized void switchToBitset(LazyDFA lazy) {
+            if (matcher != lazy)
+                return;
+            reason = "lazy DFA exceeded " + lazy.cachedStates() + " states at run time; was: " + reason;
+            matcher = compact;
+            engine = Engine.BITSET;
+        }
+
+        /**
+         * Retrieves the engine currently in use.
+         * @return The engine.
+         */
+        public Engine engine() {
+            return engine;
+        }
+
+        /**
+         * Explains why the current engine was chosen.
+         * @return A short description of the statistics behind the choice.
+         */
+        public String reason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return engine + " (" + reason + ")";
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package fa.nfa;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Generates strings over sigma that an NFA accepts or rejects, for building test workloads.
+ * The sampler explores the sets of NFA states that can be active at once, i.e. the
+ * states of the subset construction, breadth first; the empty set stands for rejection.
+ * The number of sets it may explore is fixed up front. Counting strings of one length
+ * keeps two counts per set, and sampling them keeps (length + 1) counts per set, i.e.
+ * O(length * sets) memory. Counts are longs unless one overflows, in which case they
+ * are recomputed as BigIntegers.
+ *
+ * @author Nick Bortz & Flynn Hoare
+ * @since 2025-03-14
+ */
+public class LanguageSampler {
+    private final CompactNFA nfa;
+    private final int maxSets;
+    // Sampled strings only use sigma, never 'e'
+    private final char[] symbols;
+
+    // The explored sets, numbered in breadth-first order
+    private final Map<CompactNFA.StateSet, Integer> ids;
+    private final List<int[]> subsets;
+    private final BitSet accepting;
+    // delta[q * symbols.length + a] is the set reached from set q on symbols[a]
+    private int[] delta;
+    // The set and symbol each set was first reached from, for rebuilding shortest strings
+    private int[] parent;
+    private char[] parentSymbol;
+    private int expanded;
+
+    private final int[] scratch;
+    private final long[] seen;
+
+    /**
+     * Creates a sampler for a compact NFA.
+     * @param nfa The NFA to sample.
+     * @param maxSets The most sets of active states to explore.
+     */
+    public LanguageSampler(CompactNFA nfa, int maxSets) {
+        this.nfa = nfa;
+        this.maxSets = maxSets;
+        symbols = Arrays.copyOf(nfa.columns(), nfa.symbolCount());
+
+        ids = new HashMap<>();
+        subsets = new ArrayList<>();
+        accepting = new BitSet();
+        delta = new int[Math.max(1, symbols.length) * 16];
+        parent = new int[16];
+        parentSymbol = new char[16];
+        expanded = 0;
+
+        scratch = new int[nfa.stateCount()];
+        seen = new long[(nfa.stateCount() + 63) >>> 6];
+
+        int size = nfa.startClosure(scratch, seen);
+        addSet(Arrays.copyOf(scratch, size), -1, '\0');
+    }
+
+    /**
+     * Finds a shortest string the NFA accepts.
+     * @return A shortest accepted string, or null if the NFA accepts nothing.
+     * @throws IllegalStateException if the search needs more than maxSets sets.
+     */
+    public String shortestAccepted() {
+        for (int q = 0; ; q++) {
+            while (q >= subsets.size()) {
+                if (!expandNext())
+                    return null;
+            }
+            if (accepting.get(q))
+                return path(q);
+        }
+    }
+
+    /**
+     * Counts the strings of a given length that the NFA accepts or rejects.
+     * @param length The length of the strings.
+     * @param accepted true to count accepted strings, false to count rejected ones.
+     * @return The number of such strings.
+     * @throws IllegalArgumentException if length is negative.
+     * @throws IllegalStateException if the NFA has more than maxSets reachable sets.
+     */
+    public BigInteger count(int length, boolean accepted) {
+        checkLength(length);
+        long[][] counts = longCounts(length, accepted, false);
+        if (counts != null)
+            return BigInteger.valueOf(counts[row(length, false)][0]);
+        return bigCounts(length, accepted, false)[row(length, false)][0];
+    }
+
+    /**
+     * Draws strings of a given length uniformly at random from those the NFA accepts or rejects.
+     * Each string is built one symbol at a time, choosing every symbol with probability
+     * proportional to the number of ways the rest of the string can be completed.
+     * @param length The length of the strings.
+     * @param accepted true to sample accepted strings, false to sample rejected ones.
+     * @param random The source of randomness.
+     * @return An infinite stream of samples, or an empty stream if there are no such strings.
+     * @throws IllegalArgumentException if length is negative.
+     * @throws IllegalStateException if the NFA has more than maxSets reachable sets.
+     */
+    public Stream<String> sample(int length, boolean accepted, Random random) {
+        checkLength(length);
+        long[][] small = longCounts(length, accepted, true);
+        if (small != null)
+            return small[length][0] == 0 ? Stream.empty() : sampleSmall(length, small, random);
+
+        BigInteger[][] counts = bigCounts(length, accepted, true);
+        return Stream.generate(() -> {
+            char[] chars = new char[length];
+            int q = 0;
+            for (int i = 0; i < length; i++) {
+                BigInteger[] rest = counts[length - i - 1];
+                BigInteger pick = below(counts[length - i][q], random);
+
+                for (int a = 0; a < symbols.length; a++) {
+                    int to = delta[q * symbols.length + a];
+                    pick = pick.subtract(rest[to]);
+                    if (pick.signum() < 0) {
+                        chars[i] = symbols[a];
+                        q = to;
+                        break;
+                    }
+                }
+            }
+            return new String(chars);
+        });
+    }
+
+    /**
+     * Draws samples like sample, with counts that fit in a long.
+     */
+    private Stream<String> sampleSmall(int length, long[][] counts, Random random) {
+        return Stream.generate(() -> {
+            char[] chars = new char[length];
+            int q = 0;
+            for (int i = 0; i < length; i++) {
+                long[] rest = counts[length - i - 1];
+                long pick = below(counts[length - i][q], random);
+
+                for (int a = 0; a < symbols.length; a++) {
+                    int to = delta[q * symbols.length + a];
+                    pick -= rest[to];
+                    if (pick < 0) {
+                        chars[i] = symbols[a];
+                        q = to;
+                        break;
+                    }
+                }
+            }
+            return new String(chars);
+        });
+    }
+
+    /**
+     * Computes, for every explored set q and every r up to length, the number of
+     * strings of length r that lead from q to an accepted (or rejected) end.
+     * @param keepRows true to keep every row, false to keep only the last two.
+     * @return counts[row(r, keepRows)][q], or null if a count does not fit in a long.
+     */
+    private long[][] longCounts(int length, boolean accepted, boolean keepRows) {
+        int n = exploreAll();
+        long[][] counts = new long[keepRows ? length + 1 : 2][n];
+        for (int q = 0; q < n; q++)
+            counts[0][q] = accepting.get(q) == accepted ? 1 : 0;
+
+        try {
+            for (int r = 1; r <= length; r++) {
+                long[] previous = counts[row(r - 1, keepRows)];
+                long[] current = counts[row(r, keepRows)];
+                for (int q = 0; q < n; q++) {
+                    long total = 0;
+                    for (int a = 0; a < symbols.length; a++)
+                        total = Math.addExact(total, previous[delta[q * symbols.length + a]]);
+                    current[q] = total;
+                }
+            }
+        } catch (ArithmeticException e) {
+            return null;
+        }
+        return counts;
+    }
+
+    /**
+     * Computes the same counts as longCounts with arbitrary precision.
+     * @return counts[row(r, keepRows)][q].
+     */
+    private BigInteger[][] bigCounts(int length, boolean accepted, boolean keepRows) {
+        int n = exploreAll();
+        BigInteger[][] counts = new BigInteger[keepRows ? length + 1 : 2][n];
+        for (int q = 0; q < n; q++)
+            counts[0][q] = accepting.get(q) == accepted ? BigInteger.ONE : BigInteger.ZERO;
+
+        for (int r = 1; r <= length; r++) {
+            BigInteger[] previous = counts[row(r - 1, keepRows)];
+            BigInteger[] current = counts[row(r, keepRows)];
+            for (int q = 0; q < n; q++) {
+                BigInteger total = BigInteger.ZERO;
+                for (int a = 0; a < symbols.length; a++)
+                    total = total.add(previous[delta[q * symbols.length + a]]);
+                current[q] = total;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Finds the row that holds the counts for strings of length r.
+     */
+    private static int row(int r, boolean keepRows) {
+        return keepRows ? r : r & 1;
+    }
+
+    /**
+     * Explores every reachable set, since samples may pass through any of them.
+     * @return The number of sets.
+     * @throws IllegalStateException if there are more than maxSets sets.
+     */
+    private int exploreAll() {
+        while (expandNext()) {
+            // Each call expands one more set
+        }
+        return subsets.size();
+    }
+
+    /**
+     * Rejects lengths no string can have.
+     */
+    private static void checkLength(int length) {
+        if (length < 0)
+            throw new IllegalArgumentException("Negative length: " + length);
+    }
+
+    /**
+     * Computes the transitions of the next unexpanded set.
+     * @return false if every explored set has already been expanded.
+     * @throws IllegalStateException if a new set would exceed maxSets.
+     */
+    private boolean expandNext() {
+        if (expanded == subsets.size())
+            return false;
+
+        int q = expanded;
+        int[] subset = subsets.get(q);
+        for (int a = 0; a < symbols.length; a++) {
+            int size = nfa.step(subset, subset.length, symbols[a], scratch, seen);
+            int[] target = Arrays.copyOf(scratch, size);
+            Arrays.sort(target);
+
+            // addSet may grow delta, so the new set must be added before delta is read
+            Integer id = ids.get(new CompactNFA.StateSet(target, size));
+            int to = id != null ? id : addSet(target, q, symbols[a]);
+            delta[q * symbols.length + a] = to;
+        }
+        expanded++;
+        return true;
+    }
+
+    /**
+     * Records a newly reached set of active states.
+     * @param subset The sorted NFA states of the set.
+     * @param from The set it was first reached from, or -1 for the start.
+     * @param on The symbol it was first reached on.
+     * @return The id of the new set.
+     * @throws IllegalStateException if the set would exceed maxSets.
+     */
+    private int addSet(int[] subset, int from, char on) {
+        int id = subsets.size();
+        if (id >= maxSets)
+            throw new IllegalStateException("More than " + maxSets + " sets of active states");
+
+        ids.put(new CompactNFA.StateSet(subset, subset.length), id);
+        subsets.add(subset);
+        for (int state : subset) {
+            if (nfa.isFinal(state)) {
+                accepting.set(id);
+                break;
+            }
+        }
+
+        if (id == parent.length) {
+            parent = Arrays.copyOf(parent, id * 2);
+            parentSymbol = Arrays.copyOf(parentSymbol, id * 2);
+            delta = Arrays.copyOf(delta, delta.length * 2);
+        }
+        parent[id] = from;
+        parentSymbol[id] = on;
+        return id;
+    }
+
+    /**
+     * Rebuilds the string along which a set was first reached.
+     */
+    private String path(int q) {
+        StringBuilder path = new StringBuilder();
+        for (; parent[q] >= 0; q = parent[q])
+            path.append(parentSymbol[q]);
+        return path.reverse().toString();
+    }
+
+    /**
+     * Draws a uniformly random number in [0, bound).
+     */
+    private static long below(long bound, Random random) {
+        long bits;
+        long value;
+        do {
+            bits = random.nextLong() >>> 1;
+            value = bits % bound;
+        } while (bits - value + (bound - 1) < 0);
+        return value;
+    }
+
+    /**
+     * Draws a uniformly random number in [0, bound).
+     */
+    private static BigInteger below(BigInteger bound, Random random) {
+        BigInteger pick;
+        do {
+            pick = new BigInteger(bound.bitLength(), random);
+        } while (pick.compareTo(bound) >= 0);
+        return pick;
+    }
+}
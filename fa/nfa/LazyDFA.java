@@ -0,0 +1,187 @@
+package fa.nfa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A DFA that is built on demand while matching: a DFA state and its transitions
+ * are only computed, with the subset construction, the first time an input reaches them.
+ * At most a given number of DFA states are cached; once the cache is full,
+ * inputs that need a new state are simulated by the underlying CompactNFA instead.
+ * Matching is lock-free once every state an input visits is cached, so a single
+ * instance may be shared by many threads.
+ *
+ * @author Nick Bortz & Flynn Hoare
+ * @since 2025-03-14
+ */
+public class LazyDFA implements Matcher {
+    private static final int DEAD = -1;
+    private static final int UNKNOWN = -2;
+    private static final int FULL = -3;
+
+    private final CompactNFA nfa;
+    private final int maxStates;
+    private final char[] columns;
+    // columnIndex[c] is the column of character c, or -1 if c has no column
+    private final int[] columnIndex;
+
+    // The subset construction state, guarded by this
+    private final Map<CompactNFA.StateSet, Integer> ids;
+    private final List<int[]> subsets;
+    private final int[] scratch;
+    private final long[] seen;
+
+    // Replaced, never modified, whenever a state is added
+    private volatile Row[] rows;
+    private volatile boolean full;
+
+    /**
+     * Creates a lazy DFA for a compact NFA. Only the start state is built up front.
+     * @param nfa The NFA to determinize.
+     * @param maxStates The most DFA states to cache.
+     */
+    public LazyDFA(CompactNFA nfa, int maxStates) {
+        this.nfa = nfa;
+        this.maxStates = Math.max(1, maxStates);
+        columns = nfa.columns();
+
+        int maxChar = 0;
+        for (char column : columns)
+            maxChar = Math.max(maxChar, column);
+        columnIndex = new int[maxChar + 1];
+        Arrays.fill(columnIndex, -1);
+        for (int a = 0; a < columns.length; a++)
+            columnIndex[columns[a]] = a;
+
+        ids = new HashMap<>();
+        subsets = new ArrayList<>();
+        scratch = new int[nfa.stateCount()];
+        seen = new long[(nfa.stateCount() + 63) >>> 6];
+        rows = new Row[0];
+
+        int size = nfa.startClosure(scratch, seen);
+        if (size > 0)
+            addState(Arrays.copyOf(scratch, size));
+    }
+
+    /**
+     * Runs the DFA on input s, building any states it reaches for the first time.
+     * @param s The input string.
+     * @return true if s is in the language of the NFA.
+     */
+    @Override
+    public boolean accepts(CharSequence s) {
+        Row[] current = rows;
+        if (current.length == 0)
+            return false;
+
+        int state = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            int a = c < columnIndex.length ? columnIndex[c] : -1;
+            if (a < 0)
+                return false;
+
+            int next = current[state].next[a];
+            // A target we cannot see yet is looked up again under the lock
+            if (next == UNKNOWN || next >= current.length) {
+                next = transition(state, a);
+                current = rows;
+            }
+
+            if (next == FULL)
+                return nfa.accepts(s);
+            if (next == DEAD)
+                return false;
+            state = next;
+        }
+        return current[state].accepting;
+    }
+
+    /**
+     * Computes and caches a transition.
+     * @param state The source DFA state.
+     * @param a The column of the input character.
+     * @return The target DFA state, DEAD, or FULL if the target would not fit in the cache.
+     */
+    private synchronized int transition(int state, int a) {
+        int known = rows[state].next[a];
+        if (known != UNKNOWN)
+            return known;
+
+        int[] subset = subsets.get(state);
+        int size = nfa.step(subset, subset.length, columns[a], scratch, seen);
+        int to = DEAD;
+        if (size > 0) {
+            int[] target = Arrays.copyOf(scratch, size);
+            Arrays.sort(target);
+            Integer id = ids.get(new CompactNFA.StateSet(target, size));
+            if (id != null) {
+                to = id;
+            } else if (subsets.size() >= maxStates) {
+                full = true;
+                return FULL;
+            } else {
+                to = addState(target);
+            }
+        }
+
+        // The target row is published before the transition that leads to it
+        rows[state].next[a] = to;
+        return to;
+    }
+
+    /**
+     * Adds a DFA state with no known transitions.
+     * @param subset The sorted NFA states of the new DFA state.
+     * @return The id of the new state.
+     */
+    private int addState(int[] subset) {
+        Arrays.sort(subset);
+        int id = subsets.size();
+        ids.put(new CompactNFA.StateSet(subset, subset.length), id);
+        subsets.add(subset);
+
+        boolean accepting = false;
+        for (int state : subset)
+            accepting |= nfa.isFinal(state);
+
+        Row[] grown = Arrays.copyOf(rows, id + 1);
+        grown[id] = new Row(columns.length, accepting);
+        rows = grown;
+        return id;
+    }
+
+    /**
+     * Retrieves the number of DFA states built so far.
+     * @return The number of cached states.
+     */
+    public int cachedStates() {
+        return rows.length;
+    }
+
+    /**
+     * Determines if an input has needed more states than the cache can hold.
+     * @return true once the cache has overflowed.
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    /**
+     * The outgoing transitions of one DFA state.
+     */
+    private static final class Row {
+        private final int[] next;
+        private final boolean accepting;
+
+        private Row(int columns, boolean accepting) {
+            this.next = new int[columns];
+            this.accepting = accepting;
+            Arrays.fill(next, UNKNOWN);
+        }
+    }
+}
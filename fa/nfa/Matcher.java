@@ -0,0 +1,20 @@
+package fa.nfa;
+
+/**
+ * A compiled form of an automaton that can decide membership of strings.
+ * Every implementation accepts exactly the strings that NFA.accepts accepts
+ * for the NFA it was built from.
+ *
+ * @author Nick Bortz & Flynn Hoare
+ * @since 2025-03-14
+ */
+public interface Matcher {
+
+	/**
+	 * Simulates the automaton on input s to determine
+	 * whether it accepts s.
+	 * @param s - the input string
+	 * @return true if s in the language of the automaton and false otherwise
+	 */
+	public boolean accepts(CharSequence s);
+}
@@ -0,0 +1,344 @@
+package fa.nfa;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles small automata into generated classes whose accepts method encodes
+ * every DFA state as its own block of code that switches on the next input character
+ * and jumps straight to the block of the next state, so no transition table is read at run time
+ * and the JIT can inline the matcher into its caller.
+ * Automata that are too large fall back to the table-driven engines.
+ *
+ * @author Nick Bortz & Flynn Hoare
+ * @since 2025-03-14
+ */
+public final class MatcherCompiler {
+    // Most DFA states worth generating code for
+    public static final int MAX_STATES = 64;
+    // HotSpot does not JIT compile methods longer than this, see -XX:-DontCompileHugeMethods
+    private static final int MAX_CODE_BYTES = 8000;
+
+    // The generated class is defined in this package, so it may implement Matcher
+    private static final String CLASS_NAME = "fa/nfa/GeneratedMatcher";
+
+    // Constant pool indices of the entries written by classFile
+    private static final int THIS_CLASS = 2;
+    private static final int OBJECT_CLASS = 4;
+    private static final int MATCHER_CLASS = 6;
+    private static final int INIT_NAME = 7;
+    private static final int VOID_DESCRIPTOR = 8;
+    private static final int OBJECT_INIT = 10;
+    private static final int ACCEPTS_NAME = 11;
+    private static final int ACCEPTS_DESCRIPTOR = 12;
+    private static final int CODE = 13;
+    private static final int LENGTH = 19;
+    private static final int CHAR_AT = 23;
+
+    // Local variable slots of the generated accepts method
+    private static final int INPUT = 1;
+    private static final int INPUT_LENGTH = 2;
+    private static final int INDEX = 3;
+
+    private MatcherCompiler() {
+    }
+
+    /**
+     * Compiles an NFA into the fastest matcher available for its size.
+     * @param nfa The NFA to compile.
+     * @return A generated matcher, or a CompactNFA if the NFA is too large.
+     */
+    public static Matcher compile(NFA nfa) {
+        return compile(new CompactNFA(nfa));
+    }
+
+    /**
+     * Compiles a compact NFA into the fastest matcher available for its size.
+     * @param nfa The NFA to compile.
+     * @return A generated matcher, or nfa itself if its DFA has more than MAX_STATES states.
+     */
+    public static Matcher compile(CompactNFA nfa) {
+        TableDFA dfa = nfa.determinize(MAX_STATES);
+        return dfa == null ? nfa : compile(dfa);
+    }
+
+    /**
+     * Compiles a DFA into a generated matcher.
+     * @param dfa The DFA to compile.
+     * @return A generated matcher, or dfa itself if it is too large or has no states.
+     */
+    public static Matcher compile(TableDFA dfa) {
+        if (dfa.stateCount() == 0 || dfa.stateCount() > MAX_STATES)
+            return dfa;
+
+        byte[] code = acceptsCode(dfa);
+        if (code.length > MAX_CODE_BYTES)
+            return dfa;
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                    .defineHiddenClass(classFile(code), true);
+            return (Matcher) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not define generated matcher", e);
+        }
+    }
+
+    /**
+     * Writes the bytecode of accepts(CharSequence). Every DFA state q gets a block
+     * of code, so the current state is the position in the code rather than a variable:
+     * <pre>
+     * state_q:
+     *     if (i &gt;= length) return isAccepting(q);
+     *     switch (s.charAt(i++)) { case a: goto state_delta(q, a); default: return false; }
+     * </pre>
+     */
+    private static byte[] acceptsCode(TableDFA dfa) {
+        int n = dfa.stateCount();
+        Code code = new Code();
+        int reject = code.newLabel();
+        int[] state = code.newLabels(n);
+        int[] body = code.newLabels(n);
+
+        code.op(0x2b);                              // aload_1
+        code.invokeInterface(LENGTH, 1);
+        code.op(0x36, INPUT_LENGTH);                // istore length
+        code.pushInt(0);
+        code.op(0x36, INDEX);                       // istore i
+
+        // State 0 is written first, so the code falls through into the start state
+        for (int q = 0; q < n; q++) {
+            code.bind(state[q]);
+            code.op(0x15, INDEX);                   // iload i
+            code.op(0x15, INPUT_LENGTH);            // iload length
+            code.branch(0xa1, body[q]);             // if_icmplt body
+            code.pushInt(dfa.isAccepting(q) ? 1 : 0);
+            code.op(0xac);                          // ireturn
+
+            List<int[]> cases = new ArrayList<>();
+            for (int a = 0; a < dfa.columnCount(); a++) {
+                int to = dfa.transition(q, a);
+                if (to >= 0)
+                    cases.add(new int[] { dfa.column(a), state[to] });
+            }
+            cases.sort((x, y) -> Integer.compare(x[0], y[0]));
+
+            code.bind(body[q]);
+            code.op(0x19, INPUT);                   // aload s
+            code.op(0x15, INDEX);                   // iload i
+            code.op(0x84, INDEX, 1);                // iinc i 1
+            code.invokeInterface(CHAR_AT, 2);
+            code.lookupSwitch(reject, cases);
+        }
+
+        code.bind(reject);
+        code.op(0x03);                              // iconst_0
+        code.op(0xac);                              // ireturn
+
+        return code.toByteArray();
+    }
+
+    /**
+     * Wraps the code of accepts in a class file for a final class implementing Matcher.
+     * Version 49 class files need no stack map frames, which keeps the generator small.
+     */
+    private static byte[] classFile(byte[] acceptsCode) {
+        Bytes out = new Bytes();
+        out.u4(0xCAFEBABE);
+        out.u2(0);
+        out.u2(49);
+
+        // Constant pool, see the index constants above
+        out.u2(24);
+        out.utf8(CLASS_NAME);                           // 1
+        out.u1(7).u2(1);                                // 2 this class
+        out.utf8("java/lang/Object");                   // 3
+        out.u1(7).u2(3);                                // 4 Object
+        out.utf8("fa/nfa/Matcher");                     // 5
+        out.u1(7).u2(5);                                // 6 Matcher
+        out.utf8("<init>");                             // 7
+        out.utf8("()V");                                // 8
+        out.u1(12).u2(7).u2(8);                         // 9 <init>:()V
+        out.u1(10).u2(4).u2(9);                         // 10 Object.<init>
+        out.utf8("accepts");                            // 11
+        out.utf8("(Ljava/lang/CharSequence;)Z");        // 12
+        out.utf8("Code");                               // 13
+        out.utf8("java/lang/CharSequence");             // 14
+        out.u1(7).u2(14);                               // 15 CharSequence
+        out.utf8("length");                             // 16
+        out.utf8("()I");                                // 17
+        out.u1(12).u2(16).u2(17);                       // 18 length:()I
+        out.u1(11).u2(15).u2(18);                       // 19 CharSequence.length
+        out.utf8("charAt");                             // 20
+        out.utf8("(I)C");                               // 21
+        out.u1(12).u2(20).u2(21);                       // 22 charAt:(I)C
+        out.u1(11).u2(15).u2(22);                       // 23 CharSequence.charAt
+
+        // public final class, super Object, implements Matcher, no fields
+        out.u2(0x0031).u2(THIS_CLASS).u2(OBJECT_CLASS);
+        out.u2(1).u2(MATCHER_CLASS);
+        out.u2(0);
+
+        out.u2(2);
+        // public <init>() { super(); }
+        byte[] init = { 0x2a, (byte) 0xb7, 0, OBJECT_INIT, (byte) 0xb1 };
+        method(out, 0x0001, INIT_NAME, VOID_DESCRIPTOR, 1, 1, init);
+        // public final boolean accepts(CharSequence)
+        method(out, 0x0011, ACCEPTS_NAME, ACCEPTS_DESCRIPTOR, 2, INDEX + 1, acceptsCode);
+
+        out.u2(0);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a method_info structure with a single Code attribute.
+     */
+    private static void method(Bytes out, int access, int name, int descriptor,
+            int maxStack, int maxLocals, byte[] code) {
+        out.u2(access).u2(name).u2(descriptor);
+        out.u2(1);
+        out.u2(CODE).u4(12 + code.length);
+        out.u2(maxStack).u2(maxLocals);
+        out.u4(code.length).bytes(code);
+        // No exception table, no attributes
+        out.u2(0).u2(0);
+    }
+
+    /**
+     * A growable big-endian byte buffer.
+     */
+    private static class Bytes {
+        byte[] data = new byte[256];
+        int size;
+
+        Bytes u1(int value) {
+            if (size == data.length)
+                data = Arrays.copyOf(data, size * 2);
+            data[size++] = (byte) value;
+            return this;
+        }
+
+        Bytes u2(int value) {
+            return u1(value >>> 8).u1(value);
+        }
+
+        Bytes u4(int value) {
+            return u2(value >>> 16).u2(value);
+        }
+
+        Bytes bytes(byte[] values) {
+            for (byte value : values)
+                u1(value);
+            return this;
+        }
+
+        Bytes utf8(String value) {
+            // Only ASCII names are written, whose modified UTF-8 is plain ASCII
+            u1(1).u2(value.length());
+            for (int i = 0; i < value.length(); i++)
+                u1(value.charAt(i));
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    /**
+     * A bytecode buffer with labels whose branch offsets are patched in once known.
+     */
+    private static class Code extends Bytes {
+        private int[] labels = new int[16];
+        private int labelCount;
+        // Each fixup is { offset of the branch opcode, offset of the operand, label, operand width }
+        private final List<int[]> fixups = new ArrayList<>();
+
+        int newLabel() {
+            if (labelCount == labels.length)
+                labels = Arrays.copyOf(labels, labelCount * 2);
+            labels[labelCount] = -1;
+            return labelCount++;
+        }
+
+        int[] newLabels(int count) {
+            int[] result = new int[count];
+            for (int i = 0; i < count; i++)
+                result[i] = newLabel();
+            return result;
+        }
+
+        void bind(int label) {
+            labels[label] = size;
+        }
+
+        void op(int... values) {
+            for (int value : values)
+                u1(value);
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5)
+                op(0x03 + value);                   // iconst_<value>
+            else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+                op(0x10, value);                    // bipush
+            else
+                u1(0x11).u2(value);                 // sipush
+        }
+
+        void invokeInterface(int method, int argumentSlots) {
+            u1(0xb9).u2(method).u1(argumentSlots).u1(0);
+        }
+
+        /**
+         * Writes a branch instruction with a 2 byte offset.
+         */
+        void branch(int opcode, int label) {
+            int at = size;
+            u1(opcode);
+            reference(at, label, 2);
+        }
+
+        /**
+         * Writes a lookupswitch over { key, label } pairs sorted by key.
+         */
+        void lookupSwitch(int defaultLabel, List<int[]> cases) {
+            int at = size;
+            u1(0xab);
+            align();
+            reference(at, defaultLabel, 4);
+            u4(cases.size());
+            for (int[] c : cases) {
+                u4(c[0]);
+                reference(at, c[1], 4);
+            }
+        }
+
+        private void align() {
+            while (size % 4 != 0)
+                u1(0);
+        }
+
+        private void reference(int opcodeAt, int label, int width) {
+            fixups.add(new int[] { opcodeAt, size, label, width });
+            for (int i = 0; i < width; i++)
+                u1(0);
+        }
+
+        @Override
+        byte[] toByteArray() {
+            for (int[] fixup : fixups) {
+                int offset = labels[fixup[2]] - fixup[0];
+                if (fixup[3] == 2 && offset != (short) offset)
+                    throw new IllegalStateException("Branch offset out of range: " + offset);
+                for (int i = 0; i < fixup[3]; i++)
+                    data[fixup[1] + i] = (byte) (offset >>> (8 * (fixup[3] - 1 - i)));
+            }
+            return super.toByteArray();
+        }
+    }
+}
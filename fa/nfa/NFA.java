@@ -1,8 +1,10 @@
 package fa.nfa;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 
@@ -22,6 +24,14 @@ public class NFA implements NFAInterface {
 
     private NFAState start;
 
+    // Running counts of structural properties, kept up to date by every change to the NFA
+    private int symbolEdges;
+    private int epsilonEdges;
+    // (state, symbol) pairs with at least one and with more than one destination state
+    private int definedPairs;
+    private int multiTargetPairs;
+    private int reachableStates;
+
     /**
      * Constructor for a new NFA.
      */
@@ -30,6 +40,12 @@ public class NFA implements NFAInterface {
         sigma = new LinkedHashSet<>();
 
         start = null;
+
+        symbolEdges = 0;
+        epsilonEdges = 0;
+        definedPairs = 0;
+        multiTargetPairs = 0;
+        reachableStates = 0;
     }
 
     /**
@@ -78,13 +94,17 @@ public class NFA implements NFAInterface {
         if (state == null)
             return false;
 
-        // Ensure no other states are marked as isStart
-        for (NFAState other : states)
+        // Ensure no other states are marked as isStart, and forget what the old start state reached
+        for (NFAState other : states) {
             other.setStart(false);
+            other.setReachable(false);
+        }
+        reachableStates = 0;
 
         // Set the start state to this state
         state.setStart(true);
         start = state;
+        markReachable(state);
         return true;
     }
 
@@ -165,6 +185,119 @@ public class NFA implements NFAInterface {
         return null;
     }
 
+    /**
+     * Creates an independent copy of this NFA with the same alphabet, states and transitions.
+     * @return A new NFA that shares no states with this one.
+     */
+    public NFA copy() {
+        NFA copy = new NFA();
+        copy.sigma.addAll(sigma);
+
+        Map<NFAState, NFAState> copies = new HashMap<>(states.size() * 2);
+        for (NFAState state : states) {
+            NFAState stateCopy = new NFAState(state.getName());
+            if (state.isFinal())
+                stateCopy.makeFinal();
+            copies.put(state, stateCopy);
+            copy.states.add(stateCopy);
+        }
+
+        if (start != null) {
+            copy.start = copies.get(start);
+            copy.start.setStart(true);
+            copy.markReachable(copy.start);
+        }
+
+        // Epsilon transitions are not part of sigma, so they are copied separately
+        Set<Character> labels = new LinkedHashSet<>(sigma);
+        labels.add('e');
+        for (NFAState state : states) {
+            NFAState stateCopy = copies.get(state);
+            for (char label : labels) {
+                for (NFAState to : state.toStates(label))
+                    copy.connect(stateCopy, label, copies.get(to));
+            }
+        }
+
+        return copy;
+    }
+
+    /**
+     * Creates an NFA for the reverse of this NFA's language: every transition is flipped
+     * and the old start state becomes the only final state. A new start state stands for
+     * every state that reaches an old final state on epsilon transitions alone, by copying
+     * their outgoing transitions; unlike epsilon transitions to the old final states, the
+     * copies cannot be taken by reading 'e'. The other states keep their names.
+     * @return A new NFA that accepts s exactly when this NFA accepts s reversed, 'e' included.
+     */
+    public NFA reverse() {
+        NFA reverse = new NFA();
+        reverse.sigma.addAll(sigma);
+
+        Map<NFAState, NFAState> copies = new HashMap<>(states.size() * 2);
+        Set<String> names = new HashSet<>();
+        for (NFAState state : states) {
+            NFAState stateCopy = new NFAState(state.getName());
+            if (state == start)
+                stateCopy.makeFinal();
+            copies.put(state, stateCopy);
+            reverse.states.add(stateCopy);
+            names.add(state.getName());
+        }
+
+        // The new start state needs a name no other state has
+        String startName = "reverse_start";
+        while (names.contains(startName))
+            startName += "'";
+        NFAState newStart = new NFAState(startName);
+        newStart.setStart(true);
+        reverse.states.add(newStart);
+        reverse.start = newStart;
+        reverse.markReachable(newStart);
+
+        Set<Character> labels = new LinkedHashSet<>(sigma);
+        labels.add('e');
+        for (NFAState state : states) {
+            for (char label : labels) {
+                for (NFAState to : state.toStates(label))
+                    reverse.connect(copies.get(to), label, copies.get(state));
+            }
+        }
+
+        // Flipped epsilon transitions lead from the old final states to everything that reaches them
+        Set<NFAState> accepting = new HashSet<>();
+        for (NFAState state : states) {
+            if (state.isFinal())
+                accepting.addAll(reverse.eClosure(copies.get(state)));
+        }
+        for (NFAState state : accepting) {
+            if (state.isFinal())
+                newStart.makeFinal();
+            for (char label : labels) {
+                for (NFAState to : state.toStates(label))
+                    reverse.connect(newStart, label, to);
+            }
+        }
+
+        return reverse;
+    }
+
+    /**
+     * Retrieves every state of the NFA in insertion order.
+     * @return A read-only view of the NFA's states.
+     */
+    Set<NFAState> getStates() {
+        return Collections.unmodifiableSet(states);
+    }
+
+    /**
+     * Retrieves the start state of the NFA.
+     * @return The start state, or null if none has been set.
+     */
+    NFAState getStart() {
+        return start;
+    }
+
     /**
 	 * Determines if a state with a given name is final
 	 * @param name the name of the state
@@ -292,33 +425,107 @@ public class NFA implements NFAInterface {
             NFAState to = getState(toStateName);
             if (to == null) return false;  // check if state exists
 
-            from.addTransition(onSymb, to);  // Add transition in NFAState
+            connect(from, onSymb, to);  // Add transition in NFAState
         }
 
         return true;
     }
 
+    /**
+     * Adds a single transition and updates the structural counts.
+     * @param from The source state.
+     * @param onSymb The label of the transition.
+     * @param to The destination state.
+     */
+    private void connect(NFAState from, char onSymb, NFAState to) {
+        // Nothing changes if the transition already exists
+        if (!from.addTransition(onSymb, to))
+            return;
+
+        if (onSymb == 'e') {
+            epsilonEdges++;
+        } else {
+            symbolEdges++;
+            int targets = from.toStates(onSymb).size();
+            if (targets == 1)
+                definedPairs++;
+            else if (targets == 2)
+                multiTargetPairs++;
+        }
+
+        // Transitions are never removed, so reachability only grows until the start state changes
+        if (from.isReachable())
+            markReachable(to);
+    }
+
+    /**
+     * Marks a state and every state reachable from it as reachable from the start state.
+     * States that are already marked are not visited again.
+     * @param root The newly reachable state.
+     */
+    private void markReachable(NFAState root) {
+        if (root.isReachable())
+            return;
+
+        Stack<NFAState> stack = new Stack<>();
+        root.setReachable(true);
+        reachableStates++;
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            NFAState current = stack.pop();
+            for (Set<NFAState> targets : current.targetSets()) {
+                for (NFAState next : targets) {
+                    if (!next.isReachable()) {
+                        next.setReachable(true);
+                        reachableStates++;
+                        stack.push(next);
+                    }
+                }
+            }
+        }
+    }
+
     /**
 	 * Determines if NFA is an instance of a DFA
 	 * @return - true if NFA's transition function has DFA's properties.
 	 */
     @Override
     public boolean isDFA() {
-        for (NFAState state : states) {
-            // Check for epsilon transitions
-            if (!state.toStates('e').isEmpty()) {
-                return false;  
-            }
-    
-            // Check that each symbol has at most ONE transition
-            for (char symbol : sigma) {
-                if (state.toStates(symbol).size() > 1) {
-                    return false;  
-                }
-            }
-        }
-    
-        return true;  // No epsilon transitions, and all symbols have one transition at most
-    
+        // No epsilon transitions, and all symbols have one transition at most
+        return epsilonEdges == 0 && multiTargetPairs == 0;
+    }
+
+    /**
+     * Determines if every state has a transition on every symbol of sigma.
+     * @return true if no (state, symbol) pair is missing a transition.
+     */
+    public boolean isComplete() {
+        return definedPairs == (long) states.size() * symbolCount();
+    }
+
+    /**
+     * Determines if the NFA has any epsilon transitions.
+     * @return true if at least one epsilon transition exists.
+     */
+    public boolean hasEpsilon() {
+        return epsilonEdges > 0;
+    }
+
+    /**
+     * Takes a snapshot of the NFA's structural counts.
+     * @return The current statistics.
+     */
+    public NFAStats stats() {
+        return new NFAStats(states.size(), symbolCount(), symbolEdges, epsilonEdges,
+                definedPairs, multiTargetPairs, reachableStates);
+    }
+
+    /**
+     * Counts the symbols of sigma that can label a non-epsilon transition.
+     * @return The size of sigma, not counting 'e'.
+     */
+    private int symbolCount() {
+        return sigma.contains('e') ? sigma.size() - 1 : sigma.size();
     }
 }
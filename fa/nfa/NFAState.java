@@ -1,5 +1,6 @@
 package fa.nfa;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -18,6 +19,8 @@ import fa.State;
 public class NFAState extends State {
     private boolean isStart;
     private boolean isFinal;
+    // Whether the owning NFA can reach this state from its start state
+    private boolean isReachable;
 
     private final Map<Character, Set<NFAState>> transitions;
 
@@ -25,6 +28,7 @@ public class NFAState extends State {
         super(name);
         isStart = false;
         isFinal = false;
+        isReachable = false;
         transitions = new HashMap<>();
     }
 
@@ -44,16 +48,26 @@ public class NFAState extends State {
         isFinal = true;
     }
 
+    boolean isReachable() {
+        return isReachable;
+    }
+
+    void setReachable(boolean value) {
+        isReachable = value;
+    }
+
     /**
      * Adds a transition from this state to another state on a given input symbol.
      * If a transition on this symbol already exists, the new state is added to the set.
+     * Only NFA may call this, since it keeps the structural counts of its states up to date.
      *
      * @param onSymb   The input symbol that triggers the transition.
      * @param toState  The destination state for this transition.
+     * @return true if the transition was new, false if it already existed.
      */
-    public void addTransition(char onSymb, NFAState toState) {
+    boolean addTransition(char onSymb, NFAState toState) {
         transitions.putIfAbsent(onSymb, new HashSet<>());  // Ensure key exists
-        transitions.get(onSymb).add(toState);
+        return transitions.get(onSymb).add(toState);
     }
 
     /**
@@ -67,5 +81,14 @@ public class NFAState extends State {
         return transitions.getOrDefault(onSymb, Collections.emptySet());
     }
 
+    /**
+     * Retrieves the target sets of all transitions out of this state, including epsilon transitions.
+     *
+     * @return A read-only view of one set of destination states per symbol.
+     */
+    Collection<Set<NFAState>> targetSets() {
+        return Collections.unmodifiableCollection(transitions.values());
+    }
+
 
 }
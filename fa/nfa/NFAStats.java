@@ -0,0 +1,111 @@
+package fa.nfa;
+
+/**
+ * An immutable snapshot of the structural counts an NFA keeps up to date
+ * as states, symbols and transitions are added, for capacity planning.
+ *
+ * @author Nick Bortz & Flynn Hoare
+ * @since 2025-03-14
+ */
+public class NFAStats {
+    private final int states;
+    private final int symbols;
+    private final int symbolEdges;
+    private final int epsilonEdges;
+    private final int definedPairs;
+    private final int multiTargetPairs;
+    private final int reachableStates;
+
+    /**
+     * Records the counts of an NFA.
+     * @see NFA#stats()
+     */
+    NFAStats(int states, int symbols, int symbolEdges, int epsilonEdges,
+            int definedPairs, int multiTargetPairs, int reachableStates) {
+        this.states = states;
+        this.symbols = symbols;
+        this.symbolEdges = symbolEdges;
+        this.epsilonEdges = epsilonEdges;
+        this.definedPairs = definedPairs;
+        this.multiTargetPairs = multiTargetPairs;
+        this.reachableStates = reachableStates;
+    }
+
+    /**
+     * @return The number of states.
+     */
+    public int getStates() {
+        return states;
+    }
+
+    /**
+     * @return The number of symbols in sigma, not counting 'e'.
+     */
+    public int getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return The number of transitions on symbols of sigma.
+     */
+    public int getSymbolEdges() {
+        return symbolEdges;
+    }
+
+    /**
+     * @return The number of epsilon transitions.
+     */
+    public int getEpsilonEdges() {
+        return epsilonEdges;
+    }
+
+    /**
+     * @return The number of (state, symbol) pairs with at least one transition.
+     */
+    public int getDefinedPairs() {
+        return definedPairs;
+    }
+
+    /**
+     * @return The number of (state, symbol) pairs without a transition.
+     */
+    public long getMissingPairs() {
+        return (long) states * symbols - definedPairs;
+    }
+
+    /**
+     * @return The number of (state, symbol) pairs with more than one transition.
+     */
+    public int getMultiTargetPairs() {
+        return multiTargetPairs;
+    }
+
+    /**
+     * @return The number of states reachable from the start state, including the start state.
+     */
+    public int getReachableStates() {
+        return reachableStates;
+    }
+
+    /**
+     * @return true if the counts satisfy NFA.isDFA.
+     */
+    public boolean isDFA() {
+        return epsilonEdges == 0 && multiTargetPairs == 0;
+    }
+
+    /**
+     * @return true if the counts satisfy NFA.isComplete.
+     */
+    public boolean isComplete() {
+        return getMissingPairs() == 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("states: %d (%d reachable), symbols: %d, edges: %d + %d epsilon, "
+                + "missing pairs: %d, nondeterministic pairs: %d",
+                states, reachableStates, symbols, symbolEdges, epsilonEdges,
+                getMissingPairs(), multiTargetPairs);
+    }
+}
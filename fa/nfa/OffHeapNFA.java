@@ -0,0 +1,369 @@
+package fa.nfa;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A copy of a CompactNFA whose tables live in native memory outside the Java heap,
+ * so the garbage collector never has to scan or move them.
+ * The tables are split across direct buffers of at most 1 GB each, so together
+ * they may grow past the 2 GB limit of a single buffer.
+ * The tables are read-only, so a single instance may be used by many threads at once.
+ * It must be closed once it is no longer needed; closing waits for running
+ * simulations to finish, frees the native memory right away and makes every later call fail.
+ *
+ * @author Nick Bortz & Flynn Hoare
+ * @since 2025-03-14
+ */
+public class OffHeapNFA implements Matcher, AutoCloseable {
+    // Every buffer but the last holds 1 << CHUNK_SHIFT bytes by default
+    static final int CHUNK_SHIFT = 30;
+    // The smallest buffers still hold a whole long
+    private static final int MIN_CHUNK_SHIFT = 3;
+
+    // Frees a direct buffer at once, or null if the JDK does not allow it
+    private static final MethodHandle INVOKE_CLEANER = findCleaner();
+
+    private final int numStates;
+    private final int start;
+    private final int chunkShift;
+    private final long chunkMask;
+    private final long bytes;
+
+    // Start of each table in bytes, counted across all buffers;
+    // the wider tables come first so that no element spans two buffers
+    private final long finalsBase;
+    private final long offsetsBase;
+    private final long targetsBase;
+    private final long epsOffsetsBase;
+    private final long epsTargetsBase;
+    private final long labelsBase;
+
+    // Null once closed
+    private volatile ByteBuffer[] chunks;
+    // Number of simulations in progress
+    private final AtomicInteger users;
+    private volatile boolean closing;
+    // Released once closing is set and no simulation is in progress
+    private final CountDownLatch drained;
+
+    /**
+     * Copies the tables of a CompactNFA into native buffers of a given size.
+     * @see CompactNFA#toOffHeap(int)
+     */
+    OffHeapNFA(int numStates, int start, int[] offsets, char[] labels, int[] targets,
+            int[] epsOffsets, int[] epsTargets, long[] finals, int chunkShift) {
+        if (chunkShift < MIN_CHUNK_SHIFT || chunkShift > CHUNK_SHIFT)
+            throw new IllegalArgumentException("Buffer size out of range: 2^" + chunkShift);
+
+        this.numStates = numStates;
+        this.start = start;
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1L << chunkShift) - 1;
+
+        long length = 0;
+        finalsBase = length;
+        length += (long) finals.length * Long.BYTES;
+        offsetsBase = length;
+        length += (long) offsets.length * Integer.BYTES;
+        targetsBase = length;
+        length += (long) targets.length * Integer.BYTES;
+        epsOffsetsBase = length;
+        length += (long) epsOffsets.length * Integer.BYTES;
+        epsTargetsBase = length;
+        length += (long) epsTargets.length * Integer.BYTES;
+        labelsBase = length;
+        length += (long) labels.length * Character.BYTES;
+        bytes = length;
+
+        ByteBuffer[] buffers = new ByteBuffer[(int) ((length + chunkMask) >>> chunkShift)];
+        try {
+            for (int i = 0; i < buffers.length; i++) {
+                long size = Math.min(chunkMask + 1, length - ((long) i << chunkShift));
+                buffers[i] = ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder());
+            }
+        } catch (OutOfMemoryError e) {
+            free(buffers);
+            throw e;
+        }
+
+        for (int w = 0; w < finals.length; w++) {
+            long at = finalsBase + (long) w * Long.BYTES;
+            buffers[chunk(at)].putLong(index(at), finals[w]);
+        }
+        put(buffers, offsetsBase, offsets);
+        put(buffers, targetsBase, targets);
+        put(buffers, epsOffsetsBase, epsOffsets);
+        put(buffers, epsTargetsBase, epsTargets);
+        for (int e = 0; e < labels.length; e++) {
+            long at = labelsBase + (long) e * Character.BYTES;
+            buffers[chunk(at)].putChar(index(at), labels[e]);
+        }
+
+        chunks = buffers;
+        users = new AtomicInteger();
+        drained = new CountDownLatch(1);
+    }
+
+    /**
+     * Copies an int table into the buffers.
+     */
+    private void put(ByteBuffer[] buffers, long base, int[] table) {
+        for (int i = 0; i < table.length; i++) {
+            long at = base + (long) i * Integer.BYTES;
+            buffers[chunk(at)].putInt(index(at), table[i]);
+        }
+    }
+
+    /**
+     * Finds the buffer holding a byte.
+     */
+    private int chunk(long at) {
+        return (int) (at >>> chunkShift);
+    }
+
+    /**
+     * Finds the position of a byte within its buffer.
+     */
+    private int index(long at) {
+        return (int) (at & chunkMask);
+    }
+
+    /**
+     * Reads element i of an int table.
+     */
+    private int getInt(ByteBuffer[] buffers, long base, int i) {
+        long at = base + (long) i * Integer.BYTES;
+        return buffers[chunk(at)].getInt(index(at));
+    }
+
+    /**
+     * Simulates the NFA on input s, exactly like NFA.accepts.
+     * @param s The input string.
+     * @return true if s is in the language of the NFA.
+     * @throws IllegalStateException if this copy has been closed.
+     */
+    @Override
+    public boolean accepts(CharSequence s) {
+        acquire();
+        try {
+            return accepts(chunks, s);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Simulates the NFA on input s against open buffers.
+     */
+    private boolean accepts(ByteBuffer[] buffers, CharSequence s) {
+        if (start < 0)
+            return false;
+
+        // Each active list doubles as the worklist for its own epsilon closure
+        int[] current = new int[numStates];
+        int[] next = new int[numStates];
+        long[] seen = new long[(numStates + 63) >>> 6];
+
+        current[0] = start;
+        seen[start >>> 6] |= 1L << start;
+        int currentSize = close(buffers, current, 1, seen);
+
+        for (int i = 0; i < s.length(); i++) {
+            int nextSize = step(buffers, current, currentSize, s.charAt(i), next, seen);
+
+            // There is nowhere to go, so the string is not accepted
+            if (nextSize == 0)
+                return false;
+
+            int[] swap = current;
+            current = next;
+            next = swap;
+            currentSize = nextSize;
+        }
+
+        for (int i = 0; i < currentSize; i++) {
+            int q = current[i];
+            long at = finalsBase + (long) (q >>> 6) * Long.BYTES;
+            if ((buffers[chunk(at)].getLong(index(at)) & (1L << q)) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves a set of active states over one input character and closes the result under epsilon.
+     * @see CompactNFA
+     */
+    private int step(ByteBuffer[] buffers, int[] current, int currentSize, char c, int[] next, long[] seen) {
+        // NFA.accepts follows epsilon transitions when 'e' itself is read
+        boolean epsilon = c == CompactNFA.EPSILON;
+        long rowOffsets = epsilon ? epsOffsetsBase : offsetsBase;
+        long rowTargets = epsilon ? epsTargetsBase : targetsBase;
+
+        int nextSize = 0;
+        for (int i = 0; i < currentSize; i++) {
+            int end = getInt(buffers, rowOffsets, current[i] + 1);
+            for (int e = getInt(buffers, rowOffsets, current[i]); e < end; e++) {
+                // Rows are sorted by label, so the run on c ends at the first larger label
+                if (!epsilon) {
+                    long at = labelsBase + (long) e * Character.BYTES;
+                    char label = buffers[chunk(at)].getChar(index(at));
+                    if (label < c)
+                        continue;
+                    if (label > c)
+                        break;
+                }
+
+                int to = getInt(buffers, rowTargets, e);
+                if ((seen[to >>> 6] & (1L << to)) == 0) {
+                    seen[to >>> 6] |= 1L << to;
+                    next[nextSize++] = to;
+                }
+            }
+        }
+        return close(buffers, next, nextSize, seen);
+    }
+
+    /**
+     * Extends a list of states with everything reachable from it on epsilon transitions,
+     * then clears the bits of the listed states in seen.
+     * @see CompactNFA
+     */
+    private int close(ByteBuffer[] buffers, int[] list, int size, long[] seen) {
+        for (int i = 0; i < size; i++) {
+            int end = getInt(buffers, epsOffsetsBase, list[i] + 1);
+            for (int e = getInt(buffers, epsOffsetsBase, list[i]); e < end; e++) {
+                int to = getInt(buffers, epsTargetsBase, e);
+                if ((seen[to >>> 6] & (1L << to)) == 0) {
+                    seen[to >>> 6] |= 1L << to;
+                    list[size++] = to;
+                }
+            }
+        }
+
+        for (int i = 0; i < size; i++)
+            seen[list[i] >>> 6] &= ~(1L << list[i]);
+        return size;
+    }
+
+    /**
+     * Registers a running simulation so that close waits for it.
+     * @throws IllegalStateException if this copy has been closed.
+     */
+    private void acquire() {
+        users.incrementAndGet();
+        if (closing) {
+            release();
+            throw new IllegalStateException("OffHeapNFA has been closed");
+        }
+    }
+
+    /**
+     * Ends a running simulation, waking close if it was the last one.
+     */
+    private void release() {
+        if (users.decrementAndGet() == 0 && closing)
+            drained.countDown();
+    }
+
+    /**
+     * Determines the native memory held by this copy.
+     * @return The total size of the native buffers in bytes, or 0 once closed.
+     */
+    public long offHeapBytes() {
+        return chunks == null ? 0 : bytes;
+    }
+
+    /**
+     * Retrieves the number of native buffers holding the tables.
+     * @return The number of buffers, or 0 once closed.
+     */
+    public int bufferCount() {
+        ByteBuffer[] current = chunks;
+        return current == null ? 0 : current.length;
+    }
+
+    /**
+     * Determines if this copy has been closed.
+     * @return true if close has been called.
+     */
+    public boolean isClosed() {
+        return closing;
+    }
+
+    /**
+     * Blocks until all running simulations have finished, then frees the native buffers.
+     * Calling close more than once has no effect.
+     */
+    @Override
+    public synchronized void close() {
+        if (chunks == null)
+            return;
+
+        closing = true;
+        // Simulations that start from now on back out, so the count can only fall
+        if (users.get() == 0)
+            drained.countDown();
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                drained.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        ByteBuffer[] buffers = chunks;
+        chunks = null;
+        free(buffers);
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Returns the memory of direct buffers to the operating system without waiting for the collector.
+     * @param buffers The buffers to free; null entries are skipped.
+     */
+    private static void free(ByteBuffer[] buffers) {
+        if (INVOKE_CLEANER == null)
+            return;
+
+        for (ByteBuffer buffer : buffers) {
+            if (buffer == null)
+                continue;
+            try {
+                INVOKE_CLEANER.invokeExact(buffer);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Could not free native buffer", e);
+            }
+        }
+    }
+
+    /**
+     * Looks up sun.misc.Unsafe.invokeCleaner, the only way to free a direct buffer
+     * on demand without the incubating foreign memory API.
+     * @return A handle taking a ByteBuffer, or null if the method is not accessible.
+     */
+    private static MethodHandle findCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Without jdk.unsupported the buffers are freed when they are collected
+            return null;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package fa.nfa;
+
+import java.util.Arrays;
+
+/**
+ * A deterministic automaton stored as a dense transition table,
+ * produced from a CompactNFA by the subset construction.
+ * State 0 is the start state and -1 stands for the dead state.
+ * The columns of the table are the symbols of sigma plus 'e', which
+ * NFA.accepts treats as an instruction to follow epsilon transitions.
+ *
+ * @author Nick Bortz & Flynn Hoare
+ * @since 2025-03-14
+ */
+public class TableDFA implements Matcher {
+    private final int numStates;
+    private final char[] columns;
+    // columnIndex[c] is the column of character c, or -1 if c has no column
+    private final int[] columnIndex;
+    // delta[q * columns.length + a] is the state reached from q on columns[a]
+    private final int[] delta;
+    private final boolean[] accepting;
+
+    /**
+     * Creates a table from the output of the subset construction.
+     * @see CompactNFA#determinize(int)
+     */
+    TableDFA(int numStates, char[] columns, int[] delta, boolean[] accepting) {
+        this.numStates = numStates;
+        this.columns = columns;
+        this.delta = delta;
+        this.accepting = accepting;
+
+        int maxChar = 0;
+        for (char column : columns)
+            maxChar = Math.max(maxChar, column);
+        columnIndex = new int[maxChar + 1];
+        Arrays.fill(columnIndex, -1);
+        for (int a = 0; a < columns.length; a++)
+            columnIndex[columns[a]] = a;
+    }
+
+    /**
+     * Runs the DFA on input s.
+     * @param s The input string.
+     * @return true if s is in the language of the DFA.
+     */
+    @Override
+    public boolean accepts(CharSequence s) {
+        if (numStates == 0)
+            return false;
+
+        int state = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            int a = c < columnIndex.length ? columnIndex[c] : -1;
+            if (a < 0)
+                return false;
+
+            state = delta[state * columns.length + a];
+            if (state < 0)
+                return false;
+        }
+        return accepting[state];
+    }
+
+    /**
+     * Scans s backwards from a known match end, treating this DFA as the determinized
+     * reverse of a forward NFA (see NFA.reverse), to find where the leftmost match ending there starts.
+     * The scan stops at the dead state, so it is linear in the length of the match.
+     * @param s The input string.
+     * @param end The index just past the last character of the match.
+     * @return The smallest i such that the forward NFA accepts s[i, end), or -1 if there is none.
+     */
+    public int leftmostStart(CharSequence s, int end) {
+        if (numStates == 0)
+            return -1;
+
+        int leftmost = accepting[0] ? end : -1;
+        int state = 0;
+        for (int i = end - 1; i >= 0; i--) {
+            char c = s.charAt(i);
+            int a = c < columnIndex.length ? columnIndex[c] : -1;
+            if (a < 0)
+                break;
+
+            state = delta[state * columns.length + a];
+            if (state < 0)
+                break;
+            if (accepting[state])
+                leftmost = i;
+        }
+        return leftmost;
+    }
+
+    /**
+     * Retrieves the number of states, not counting the dead state.
+     * @return The number of states.
+     */
+    public int stateCount() {
+        return numStates;
+    }
+
+    /**
+     * Retrieves the number of columns of the transition table.
+     * @return The number of distinct input characters with transitions.
+     */
+    public int columnCount() {
+        return columns.length;
+    }
+
+    /**
+     * Retrieves the input character of a column.
+     * @param column The column index.
+     * @return The character that selects the column.
+     */
+    public char column(int column) {
+        return columns[column];
+    }
+
+    /**
+     * Looks up a transition.
+     * @param state The source state.
+     * @param column The column of the input character.
+     * @return The target state, or -1 for the dead state.
+     */
+    public int transition(int state, int column) {
+        return delta[state * columns.length + column];
+    }
+
+    /**
+     * Determines if a state is accepting.
+     * @param state The state.
+     * @return true if the state contains a final state of the NFA.
+     */
+    public boolean isAccepting(int state) {
+        return accepting[state];
+    }
+}
@@ -0,0 +1,125 @@
+package fa.nfa;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Holds the current version of an NFA that may be redefined while other threads
+ * are matching against it. Every version is a private copy of the definition
+ * plus its CompactNFA, and is never modified after it is published.
+ * Writers build the next version off to the side and swap it in atomically;
+ * readers match against whichever version was current when they started, without locking.
+ * A version is reclaimed by the garbage collector once no reader holds its snapshot.
+ *
+ * @author Nick Bortz & Flynn Hoare
+ * @since 2025-03-14
+ */
+public class VersionedNFA implements Matcher {
+    private final AtomicReference<Snapshot> current;
+
+    /**
+     * Creates a holder whose first version is a copy of the given NFA.
+     * @param initial The initial definition.
+     */
+    public VersionedNFA(NFA initial) {
+        current = new AtomicReference<>(new Snapshot(1, initial.copy()));
+    }
+
+    /**
+     * Retrieves the current version. The snapshot never changes, so a caller
+     * can match many strings against one consistent version.
+     * @return The current snapshot.
+     */
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Simulates the current version on input s.
+     * @param s The input string.
+     * @return true if s is in the language of the current version.
+     */
+    @Override
+    public boolean accepts(CharSequence s) {
+        return current.get().accepts(s);
+    }
+
+    /**
+     * Replaces the definition with a copy of the given NFA.
+     * Later changes to the argument do not affect the published version.
+     * @param definition The new definition.
+     * @return The newly published snapshot.
+     */
+    public synchronized Snapshot publish(NFA definition) {
+        Snapshot next = new Snapshot(current.get().version + 1, definition.copy());
+        current.set(next);
+        return next;
+    }
+
+    /**
+     * Applies edits to a copy of the current definition and publishes the result.
+     * Readers keep seeing the previous version until the edits are complete.
+     * The result is copied again before it is published, so an edit that keeps
+     * a reference to its argument cannot change the published version.
+     * @param edit Changes to make, e.g. calls to addTransition, setStart or setFinal.
+     * @return The newly published snapshot.
+     */
+    public synchronized Snapshot update(Consumer<NFA> edit) {
+        Snapshot previous = current.get();
+        NFA draft = previous.definition.copy();
+        edit.accept(draft);
+
+        Snapshot next = new Snapshot(previous.version + 1, draft.copy());
+        current.set(next);
+        return next;
+    }
+
+    /**
+     * One immutable version of the NFA.
+     */
+    public static final class Snapshot implements Matcher {
+        private final long version;
+        private final NFA definition;
+        private final CompactNFA compiled;
+
+        private Snapshot(long version, NFA definition) {
+            this.version = version;
+            this.definition = definition;
+            this.compiled = new CompactNFA(definition);
+        }
+
+        /**
+         * Retrieves the version number, which increases by one with every publish.
+         * @return The version number, starting at 1.
+         */
+        public long version() {
+            return version;
+        }
+
+        /**
+         * Retrieves the compiled form of this version.
+         * @return The compact NFA of this version.
+         */
+        public CompactNFA compiled() {
+            return compiled;
+        }
+
+        /**
+         * Retrieves a copy of the definition of this version.
+         * @return A new NFA that can be edited freely.
+         */
+        public NFA definition() {
+            return definition.copy();
+        }
+
+        /**
+         * Simulates this version on input s.
+         * @param s The input string.
+         * @return true if s is in the language of this version.
+         */
+        @Override
+        public boolean accepts(CharSequence s) {
+            return compiled.accepts(s);
+        }
+    }
+}
@@ -2,11 +2,24 @@ package test.nfa;
 
 import static org.junit.Assert.*;
 
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
 
+import fa.nfa.CompactNFA;
+import fa.nfa.EnginePlanner;
+import fa.nfa.LanguageSampler;
+import fa.nfa.LazyDFA;
+import fa.nfa.Matcher;
+import fa.nfa.MatcherCompiler;
 import fa.nfa.NFA;
+import fa.nfa.NFAStats;
+import fa.nfa.OffHeapNFA;
+import fa.nfa.TableDFA;
+import fa.nfa.VersionedNFA;
 
 public class NFATest {
 	
@@ -99,6 +112,68 @@ public class NFATest {
 		System.out.println("nfa1 maxCopies done");
 	}
 	
+	@Test
+	public void test1_7() {
+		NFA nfa = nfa1();
+		CompactNFA compact = new CompactNFA(nfa);
+		assertEquals(compact.stateCount(), 2);
+		assertEquals(compact.edgeCount(), 3);
+		assertFalse(compact.accepts("0"));
+		assertTrue(compact.accepts("1"));
+		assertFalse(compact.accepts("00"));
+		assertTrue(compact.accepts("101"));
+		assertFalse(compact.accepts("e"));
+		assertTrue(compact.footprintBytes() < CompactNFA.objectGraphBytes(nfa));
+		System.out.println("nfa1 compact done");
+	}
+	
+	@Test
+	public void test1_8() {
+		NFA nfa = nfa1();
+		VersionedNFA versioned = new VersionedNFA(nfa);
+		VersionedNFA.Snapshot first = versioned.snapshot();
+		assertEquals(first.version(), 1);
+		
+		// Later edits to the original must not leak into the published version
+		assertTrue(nfa.addTransition("a", Set.of("b"), '0'));
+		assertFalse(versioned.accepts("0"));
+		
+		NFA[] escaped = new NFA[1];
+		versioned.update(edit -> {
+			assertTrue(edit.addTransition("a", Set.of("b"), '0'));
+			escaped[0] = edit;
+		});
+		assertEquals(versioned.snapshot().version(), 2);
+		assertTrue(versioned.accepts("0"));
+		assertFalse(first.accepts("0"));
+		assertTrue(first.accepts("101"));
+		
+		// Editing the draft after update returns must not change the published definition
+		assertTrue(escaped[0].setFinal("a"));
+		assertFalse(versioned.snapshot().definition().isFinal("a"));
+		versioned.update(edit -> assertFalse(edit.isFinal("a")));
+		System.out.println("nfa1 versioned done");
+	}
+	
+	@Test
+	public void test1_9() {
+		NFA nfa = nfa1();
+		EnginePlanner planner = new EnginePlanner();
+		EnginePlanner.Plan plan = planner.plan(nfa, List.of("0", "1", "101"));
+		assertSame(plan, planner.plan(nfa, List.of()));
+		assertEquals(plan.engine(), EnginePlanner.Engine.GENERATED);
+		assertNotNull(plan.reason());
+		assertFalse(plan.accepts("0"));
+		assertTrue(plan.accepts("1"));
+		assertFalse(plan.accepts("00"));
+		assertTrue(plan.accepts("101"));
+		assertFalse(plan.accepts("e"));
+		
+		planner.invalidate(nfa);
+		assertNotSame(plan, planner.plan(nfa, List.of()));
+		System.out.println("nfa1 planner done");
+	}
+	
 	private NFA nfa2() {
 		NFA nfa = new NFA();
 		
@@ -199,6 +274,168 @@ public class NFATest {
 		System.out.println("nfa1 maxCopies done");
 	}
 	
+	@Test
+	public void test2_7() {
+		OffHeapNFA offHeap = new CompactNFA(nfa2()).toOffHeap();
+		assertTrue(offHeap.accepts("1111"));
+		assertFalse(offHeap.accepts("e"));
+		assertFalse(offHeap.accepts("0001100"));
+		assertTrue(offHeap.accepts("010011"));
+		assertFalse(offHeap.accepts("0101"));
+		assertTrue(offHeap.offHeapBytes() > 0);
+		assertEquals(offHeap.bufferCount(), 1);
+		
+		offHeap.close();
+		assertTrue(offHeap.isClosed());
+		assertEquals(offHeap.offHeapBytes(), 0);
+		assertEquals(offHeap.bufferCount(), 0);
+		assertThrows(IllegalStateException.class, () -> offHeap.accepts("1111"));
+		
+		// 8 byte buffers split every table, so every lookup crosses buffers
+		CompactNFA compact = new CompactNFA(nfa2());
+		try (OffHeapNFA split = compact.toOffHeap(3)) {
+			assertTrue(split.bufferCount() > 1);
+			for (String s : List.of("1111", "e", "0001100", "010011", "0101", "11e11", "", "2"))
+				assertEquals(split.accepts(s), compact.accepts(s));
+		}
+		assertThrows(IllegalArgumentException.class, () -> compact.toOffHeap(2));
+		System.out.println("nfa2 off-heap done");
+	}
+	
+	@Test
+	public void test2_8() {
+		CompactNFA compact = new CompactNFA(nfa2());
+		for (int chunks = 1; chunks <= 4; chunks++) {
+			assertTrue(compact.acceptsParallel("1111", chunks));
+			assertFalse(compact.acceptsParallel("e", chunks));
+			assertFalse(compact.acceptsParallel("0001100", chunks));
+			assertTrue(compact.acceptsParallel("010011", chunks));
+			assertFalse(compact.acceptsParallel("0101", chunks));
+		}
+		System.out.println("nfa2 parallel accepts done");
+	}
+	
+	@Test
+	public void test2_9() {
+		LazyDFA lazy = new LazyDFA(new CompactNFA(nfa2()), 3);
+		assertTrue(lazy.accepts("1111"));
+		assertFalse(lazy.accepts("e"));
+		assertFalse(lazy.accepts("0001100"));
+		assertTrue(lazy.accepts("010011"));
+		assertFalse(lazy.accepts("0101"));
+		assertEquals(lazy.cachedStates(), 3);
+		assertTrue(lazy.isFull());
+		System.out.println("nfa2 lazy DFA done");
+	}
+	
+	@Test
+	public void test2_10() {
+		NFA reverse = nfa2().reverse();
+		assertTrue(reverse.accepts("1111"));
+		assertFalse(reverse.accepts("0011000"));
+		assertTrue(reverse.accepts("110010"));
+		assertFalse(reverse.accepts("1010"));
+		// "1111e" is rejected, so reading 'e' first must not leave the final states
+		assertFalse(reverse.accepts("e1111"));
+		assertTrue(reverse.accepts("11e11"));
+		assertTrue(reverse.isFinal("q0"));
+		assertFalse(reverse.isFinal("q3"));
+		
+		// "010011" is accepted and "01" is not, so matches ending at 6 and 5 start at 0
+		CompactNFA compact = new CompactNFA(reverse);
+		assertEquals(compact.leftmostStart("010011", 6), 0);
+		assertEquals(compact.leftmostStart("010011", 5), 0);
+		assertEquals(compact.leftmostStart("010011", 3), -1);
+		assertEquals(compact.determinize(64).leftmostStart("010011", 6), 0);
+		assertEquals(compact.determinize(64).leftmostStart("010011", 3), -1);
+		System.out.println("nfa2 reverse done");
+	}
+	
+	@Test
+	public void test2_11() {
+		NFA nfa = nfa2();
+		assertFalse(nfa.isComplete());
+		assertTrue(nfa.hasEpsilon());
+		
+		NFAStats stats = nfa.stats();
+		assertEquals(stats.getStates(), 5);
+		assertEquals(stats.getSymbols(), 2);
+		assertEquals(stats.getSymbolEdges(), 7);
+		assertEquals(stats.getEpsilonEdges(), 1);
+		assertEquals(stats.getDefinedPairs(), 5);
+		assertEquals(stats.getMissingPairs(), 5);
+		assertEquals(stats.getMultiTargetPairs(), 2);
+		assertEquals(stats.getReachableStates(), 5);
+		
+		// Adding an existing transition changes nothing
+		assertTrue(nfa.addTransition("q0", Set.of("q0"), '0'));
+		assertEquals(nfa.stats().getSymbolEdges(), 7);
+		
+		assertTrue(nfa.setStart("q3"));
+		assertEquals(nfa.stats().getReachableStates(), 1);
+		System.out.println("nfa2 stats done");
+	}
+	
+	@Test
+	public void test2_12() {
+		NFA nfa = nfa2();
+		LanguageSampler sampler = new LanguageSampler(new CompactNFA(nfa), 64);
+		assertEquals(sampler.shortestAccepted(), "11");
+		assertEquals(sampler.count(2, true).intValue(), 1);
+		assertEquals(sampler.count(2, false).intValue(), 3);
+		
+		sampler.sample(6, true, new Random(1)).limit(100).forEach(s -> {
+			assertEquals(s.length(), 6);
+			assertTrue(nfa.accepts(s));
+		});
+		sampler.sample(6, false, new Random(1)).limit(100).forEach(s -> assertFalse(nfa.accepts(s)));
+		
+		// Counts of 100 symbol strings overflow a long
+		assertEquals(sampler.count(100, true).add(sampler.count(100, false)), BigInteger.TWO.pow(100));
+		sampler.sample(100, true, new Random(1)).limit(10).forEach(s -> assertTrue(nfa.accepts(s)));
+		assertThrows(IllegalArgumentException.class, () -> sampler.count(-1, true));
+		
+		// Counting 1s up to 40 needs more than the 16 sets the sampler starts with room for
+		NFA counter = new NFA();
+		counter.addSigma('0');
+		counter.addSigma('1');
+		for (int i = 0; i <= 40; i++)
+			assertTrue(counter.addState("q" + i));
+		assertTrue(counter.setStart("q0"));
+		assertTrue(counter.setFinal("q20"));
+		for (int i = 0; i <= 40; i++) {
+			assertTrue(counter.addTransition("q" + i, Set.of("q" + i), '0'));
+			if (i < 40)
+				assertTrue(counter.addTransition("q" + i, Set.of("q" + (i + 1)), '1'));
+		}
+		LanguageSampler counting = new LanguageSampler(new CompactNFA(counter), 64);
+		assertEquals(counting.count(20, true).intValue(), 1);
+		assertEquals(counting.count(21, true).intValue(), 21);
+		assertEquals(counting.count(22, true).intValue(), 231);
+		counting.sample(22, true, new Random(1)).limit(100).forEach(s -> {
+			assertEquals(s.length(), 22);
+			assertTrue(counter.accepts(s));
+		});
+		System.out.println("nfa2 sampler done");
+	}
+	
+	@Test
+	public void test2_13() {
+		NFA nfa = nfa2();
+		EnginePlanner.Plan plan = new EnginePlanner(1, 3).plan(nfa, List.of("1111", "010011"));
+		assertEquals(plan.engine(), EnginePlanner.Engine.LAZY_DFA);
+		assertTrue(plan.accepts("1111"));
+		assertFalse(plan.accepts("e"));
+		assertFalse(plan.accepts("0001100"));
+		assertTrue(plan.accepts("010011"));
+		assertFalse(plan.accepts("0101"));
+		assertEquals(plan.engine(), EnginePlanner.Engine.BITSET);
+		assertTrue(plan.reason().startsWith("lazy DFA exceeded 3 states"));
+		assertTrue(plan.accepts("1111"));
+		assertFalse(plan.accepts("0101"));
+		System.out.println("nfa2 planner fallback done");
+	}
+	
 	private NFA nfa3() {
 		NFA nfa = new NFA();
 		
@@ -297,4 +534,56 @@ public class NFATest {
 		System.out.println("nfa1 maxCopies done");
 	}
 
+	@Test
+	public void test3_7() {
+		CompactNFA compact = new CompactNFA(nfa3());
+		assertTrue(compact.accepts("###"));
+		assertTrue(compact.accepts("111#00"));
+		assertTrue(compact.accepts("01#11##"));
+		assertFalse(compact.accepts("#01000###"));
+		assertFalse(compact.accepts("011#00010#"));
+		System.out.println("nfa3 compact done");
+	}
+
+	@Test
+	public void test3_8() {
+		NFA nfa = nfa3();
+		TableDFA dfa = new CompactNFA(nfa).determinize(MatcherCompiler.MAX_STATES);
+		assertNotNull(dfa);
+		assertNull(new CompactNFA(nfa).determinize(1));
+		
+		Matcher matcher = MatcherCompiler.compile(nfa);
+		assertNotEquals(matcher.getClass(), CompactNFA.class);
+		for (Matcher m : new Matcher[] { dfa, matcher }) {
+			assertTrue(m.accepts("###"));
+			assertTrue(m.accepts("111#00"));
+			assertTrue(m.accepts("01#11##"));
+			assertFalse(m.accepts("#01000###"));
+			assertFalse(m.accepts("011#00010#"));
+			assertFalse(m.accepts("e"));
+			assertFalse(m.accepts("23"));
+		}
+		
+		// Remembering the last seven symbols needs 2^7 DFA states, more than fit in generated code
+		NFA big = new NFA();
+		big.addSigma('0');
+		big.addSigma('1');
+		for (int i = 0; i <= 7; i++)
+			assertTrue(big.addState("b" + i));
+		assertTrue(big.setStart("b0"));
+		assertTrue(big.setFinal("b7"));
+		assertTrue(big.addTransition("b0", Set.of("b0"), '0'));
+		assertTrue(big.addTransition("b0", Set.of("b0", "b1"), '1'));
+		for (int i = 1; i < 7; i++) {
+			assertTrue(big.addTransition("b" + i, Set.of("b" + (i + 1)), '0'));
+			assertTrue(big.addTransition("b" + i, Set.of("b" + (i + 1)), '1'));
+		}
+		CompactNFA compact = new CompactNFA(big);
+		assertSame(MatcherCompiler.compile(compact), compact);
+		TableDFA bigDfa = compact.determinize(1000);
+		assertEquals(bigDfa.stateCount(), 128);
+		assertSame(MatcherCompiler.compile(bigDfa), bigDfa);
+		System.out.println("nfa3 generated matcher done");
+	}
+
 }